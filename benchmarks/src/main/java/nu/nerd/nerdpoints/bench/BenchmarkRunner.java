@@ -0,0 +1,31 @@
+package nu.nerd.nerdpoints.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// ----------------------------------------------------------------------------
+/**
+ * Main class of benchmarks.jar.
+ *
+ * Accepts the standard JMH command line options and always adds the GC
+ * profiler, so that every run reports allocation rates alongside timings.
+ */
+public class BenchmarkRunner {
+    // ------------------------------------------------------------------------
+    /**
+     * Run the benchmarks.
+     *
+     * @param args JMH command line options, e.g. a benchmark name regexp.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+        .parent(commandLine)
+        .addProfiler(GCProfiler.class)
+        .build();
+        new Runner(options).run();
+    }
+} // class BenchmarkRunner
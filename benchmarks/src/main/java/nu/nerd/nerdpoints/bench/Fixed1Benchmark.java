@@ -0,0 +1,54 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nu.nerd.nerdpoints.format.Fixed1;
+
+// ----------------------------------------------------------------------------
+/**
+ * Benchmarks of formatting {@link Fixed1} values, as done for %heading.% and
+ * %x.%, %y.% and %z.%.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Fixed1Benchmark {
+    // ------------------------------------------------------------------------
+    /**
+     * The value, in tenths, stepped through the heading range.
+     */
+    protected int _tenths;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Format a heading padded to 5 characters, as for %heading.%.
+     */
+    @Benchmark
+    public String headingToStringMinLength() {
+        _tenths = (_tenths + 7) % 3600;
+        return new Fixed1(_tenths).toString(5);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Format a coordinate, as for %x.%.
+     */
+    @Benchmark
+    public String coordinateToString() {
+        _tenths = (_tenths + 7) % 3600;
+        return new Fixed1(-123456 + _tenths).toString();
+    }
+} // class Fixed1Benchmark
@@ -0,0 +1,123 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nu.nerd.nerdpoints.format.Format;
+import nu.nerd.nerdpoints.format.ScopeSchema;
+
+// ----------------------------------------------------------------------------
+/**
+ * Benchmarks of parsing and expanding {@link Format}s.
+ *
+ * The formats are the defaults from config.yml and a typical customised HUD.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+    // ------------------------------------------------------------------------
+    /**
+     * The format specifier.
+     */
+    @Param({
+        "%chunk%  %light%  %biome%  %time%  %coords%  %compass%",
+        "&4%biome% &f%light% &6%chunk% &e%coords% &f%compass% &b%time%",
+        "&7X &f%x% &7Y &f%y% &7Z &f%z%",
+        "%h%:%mm% %ampm% %orb%&6%updown%&f"
+    })
+    public String spec;
+
+    /**
+     * The parsed format.
+     */
+    protected Format _format;
+
+    /**
+     * A Scope defining every variable of every HUD section.
+     */
+    protected nu.nerd.nerdpoints.format.Scope _scope;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse the format and define the variables.
+     */
+    @Setup
+    public void setup() {
+        _format = new Format(spec);
+        _scope = new nu.nerd.nerdpoints.format.Scope(SCHEMA);
+        for (int slot = 0; slot < SCHEMA.size(); ++slot) {
+            _scope.setText(slot, VALUES[slot]);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse the format specifier.
+     */
+    @Benchmark
+    public Format parse() {
+        return new Format(spec);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse the format specifier and compile it.
+     */
+    @Benchmark
+    public Object parseAndCompile() {
+        return new Format(spec).compile(SCHEMA);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the format to a new String.
+     */
+    @Benchmark
+    public String expand() {
+        return _format.expand(_scope);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the format into a StringBuilder, limited to the HUD length.
+     */
+    @Benchmark
+    public StringBuilder expandLimited() {
+        StringBuilder builder = new StringBuilder(128);
+        _format.expand(_scope, builder, 128);
+        return builder;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The union of the variables of the HUD format and of the coords and time
+     * sections.
+     */
+    private static final ScopeSchema SCHEMA = new ScopeSchema(
+        "biome", "chunk", "compass", "coords", "light", "time",
+        "x", "y", "z", "h", "mm", "ampm", "orb", "updown");
+
+    /**
+     * The values of the variables in SCHEMA, in slot order.
+     */
+    private static final String[] VALUES = {
+        "§6plains", "C 3 4 12", "§e N", "§7X §f-1234 §7Y §f64 §7Z §f5678", "§6L 15 §f(§7B  0 §b15§f)",
+        " 7:42 p.m. ☾§6↑§f",
+        "-1234", "64", "5678", " 7", "42", "p.m.", "☾", "↑"
+    };
+} // class FormatBenchmark
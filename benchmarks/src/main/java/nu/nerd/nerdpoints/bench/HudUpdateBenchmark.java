@@ -0,0 +1,107 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nu.nerd.nerdpoints.HudScheduler;
+import nu.nerd.nerdpoints.PlayerState;
+
+// ----------------------------------------------------------------------------
+/**
+ * Benchmark of one player's complete HUD update: the main thread preparation
+ * followed by the render and send normally done off the main thread.
+ *
+ * All HUD sections are visible. An idle player's frames are mostly skipped by
+ * the main thread's change check, so the idle case mostly measures that
+ * check. The stand-in Bukkit objects are dynamic proxies, so absolute times
+ * include some reflective dispatch; compare runs rather than reading the
+ * numbers in isolation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HudUpdateBenchmark {
+    // ------------------------------------------------------------------------
+    /**
+     * Distance in blocks the player walks between frames; 0 for an idle
+     * player.
+     */
+    @Param({ "0", "0.2" })
+    public double step;
+
+    /**
+     * Ticks of world time between frames.
+     */
+    @Param({ "2" })
+    public int ticks;
+
+    /**
+     * The HUD scheduler, run once per frame to advance the tick count.
+     */
+    protected HudScheduler _scheduler;
+
+    /**
+     * The world.
+     */
+    protected SimWorld _world;
+
+    /**
+     * The player.
+     */
+    protected SimPlayer _player;
+
+    /**
+     * The player's HUD state.
+     */
+    protected PlayerState _state;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Create the player and make every HUD section visible.
+     */
+    @Setup
+    public void setup() {
+        _scheduler = BenchPlugin.get().getHudScheduler();
+        _world = SimServer.get().addWorld("world");
+        _player = new SimPlayer("bench", _world, 100, -200, 40);
+        _state = new PlayerState(_player.getPlayer());
+        _state.hudVisible.set(true);
+        _state.biomeVisible.set(true);
+        _state.chunkVisible.set(true);
+        _state.compassVisible.set(true);
+        _state.coordsVisible.set(true);
+        _state.lightVisible.set(true);
+        _state.timeVisible.set(true);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Advance the player and world and update the HUD.
+     *
+     * Running the (otherwise empty) HUD scheduler for a tick lets the world
+     * environment be captured afresh.
+     */
+    @Benchmark
+    public long update() {
+        _player.step(step);
+        _world.tick(ticks);
+        _scheduler.run();
+        _state.syncPrepareHUDUpdate();
+        _state.asyncUpdateHUD();
+        return _player.getSends();
+    }
+} // class HudUpdateBenchmark
@@ -0,0 +1,82 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nu.nerd.nerdpoints.format.TextSupplier;
+
+// ----------------------------------------------------------------------------
+/**
+ * Benchmarks of {@link TextSupplier} when the value is unchanged (cache hit)
+ * and when it changes on every call (cache miss).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextSupplierBenchmark {
+    // ------------------------------------------------------------------------
+    /**
+     * The value formatted by the suppliers.
+     */
+    protected int _value = -1234;
+
+    /**
+     * Formats an integer coordinate, like %x%.
+     */
+    protected TextSupplier<Integer> _coordinate = new TextSupplier<Integer>(() -> _value, i -> Integer.toString(i));
+
+    /**
+     * Formats a padded light level, like %light%.
+     */
+    protected TextSupplier<Integer> _light = new TextSupplier<Integer>(() -> _value & 15, i -> String.format("%2d", i));
+
+    // ------------------------------------------------------------------------
+    /**
+     * Get the text of an unchanged coordinate.
+     */
+    @Benchmark
+    public String coordinateHit() {
+        return _coordinate.get();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Get the text of a coordinate that changed.
+     */
+    @Benchmark
+    public String coordinateMiss() {
+        ++_value;
+        return _coordinate.get();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Get the text of an unchanged light level.
+     */
+    @Benchmark
+    public String lightHit() {
+        return _light.get();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Get the text of a light level that changed.
+     */
+    @Benchmark
+    public String lightMiss() {
+        ++_value;
+        return _light.get();
+    }
+} // class TextSupplierBenchmark
@@ -0,0 +1,413 @@
+package nu.nerd.nerdpoints;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+
+// ----------------------------------------------------------------------------
+/**
+ * A cache of {@link ChunkSnapshot}s of the chunks that HUD users are in, from
+ * which biome and light levels are read by array lookup.
+ *
+ * There is one ChunkSampler per world. Snapshots are taken on demand, at most
+ * hud.sampler.snapshots-per-tick per tick; once the budget is spent, a stale
+ * snapshot of a chunk is used until the next tick, and chunks with no
+ * snapshot at all are read directly from the world. At most
+ * hud.sampler.max-chunks snapshots are retained, the least recently used being
+ * evicted first. Block changes mark the snapshots of nearby chunks stale;
+ * chunk loads and unloads evict the chunk's snapshot. Snapshots older than
+ * hud.sampler.max-age-ticks are also stale, so that light level changes that
+ * raise no event, e.g. from redstone components, are eventually seen.
+ *
+ * Snapshots are indexed by an open-addressed hash table keyed by primitive
+ * chunk coordinates, so that lookups do not box, and are chained in least
+ * recently used order separately, so that invalidating a chunk does not count
+ * as using it.
+ *
+ * ChunkSnapshots are immutable, so the values read are safe to use from any
+ * thread, but all methods of this class must be called from the main thread.
+ */
+public class ChunkSampler {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param world the world.
+     */
+    public ChunkSampler(World world) {
+        _world = world;
+        _lru.prev = _lru.next = _lru;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Start a new tick, replenishing the budget of snapshots.
+     */
+    public void startTick() {
+        ++_tick;
+        _budget = NerdPoints.CONFIG.HUD_SAMPLER_SNAPSHOTS_PER_TICK;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the biome at the specified block coordinates.
+     *
+     * @param x the block X coordinate.
+     * @param z the block Z coordinate.
+     * @return the biome.
+     */
+    public Biome getBiome(int x, int z) {
+        ChunkSnapshot chunk = getChunk(x >> 4, z >> 4);
+        return (chunk != null) ? chunk.getBiome(x & 0xF, z & 0xF) : _world.getBiome(x, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the sky light and block light levels at the specified block
+     * coordinates, packed as (sky light << 4) | block light.
+     *
+     * @param x the block X coordinate.
+     * @param y the block Y coordinate.
+     * @param z the block Z coordinate.
+     * @return the packed light levels.
+     */
+    public int getLight(int x, int y, int z) {
+        if (y < 0) {
+            return 0;
+        } else if (y >= MAX_HEIGHT) {
+            return 15 << 4;
+        }
+
+        ChunkSnapshot chunk = getChunk(x >> 4, z >> 4);
+        if (chunk != null) {
+            return (chunk.getBlockSkyLight(x & 0xF, y, z & 0xF) << 4) | chunk.getBlockEmittedLight(x & 0xF, y, z & 0xF);
+        } else {
+            Block block = _world.getBlockAt(x, y, z);
+            return (block.getLightFromSky() << 4) | block.getLightFromBlocks();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Mark stale the snapshots of all chunks whose light levels could be
+     * affected by a change to the specified block.
+     *
+     * Light propagates up to 15 blocks, so chunks adjacent to the one
+     * containing the block may be affected.
+     *
+     * @param x the block X coordinate.
+     * @param z the block Z coordinate.
+     */
+    public void invalidateBlock(int x, int z) {
+        if (_size == 0) {
+            return;
+        }
+        for (int chunkX = (x - 15) >> 4; chunkX <= (x + 15) >> 4; ++chunkX) {
+            for (int chunkZ = (z - 15) >> 4; chunkZ <= (z + 15) >> 4; ++chunkZ) {
+                Entry entry = find(getKey(chunkX, chunkZ));
+                if (entry != null) {
+                    entry.stale = true;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the snapshot of the specified chunk, if there is one.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     */
+    public void evictChunk(int chunkX, int chunkZ) {
+        Entry entry = find(getKey(chunkX, chunkZ));
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of chunk snapshots retained.
+     *
+     * @return the number of chunk snapshots retained.
+     */
+    public int size() {
+        return _size;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total number of chunk snapshots taken.
+     *
+     * @return the total number of chunk snapshots taken.
+     */
+    public long getSnapshotCount() {
+        return _snapshotCount;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a snapshot of the specified chunk, taking a new one if there is
+     * none, or if it is stale or too old, and the budget allows.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the snapshot, or null if there is none and the budget is spent.
+     */
+    protected ChunkSnapshot getChunk(int chunkX, int chunkZ) {
+        long key = getKey(chunkX, chunkZ);
+        Entry entry = find(key);
+        if (entry != null) {
+            unlink(entry);
+            linkLast(entry);
+        }
+        if ((entry == null || entry.stale || _tick - entry.tick >= NerdPoints.CONFIG.HUD_SAMPLER_MAX_AGE_TICKS) &&
+            _budget > 0) {
+            --_budget;
+            ++_snapshotCount;
+            if (entry == null) {
+                entry = new Entry(key);
+                insert(entry);
+            }
+            entry.snapshot = _world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, true, false);
+            entry.stale = false;
+            entry.tick = _tick;
+        }
+        return (entry != null) ? entry.snapshot : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the entry with the specified key, without affecting the least
+     * recently used order.
+     *
+     * @param key the chunk key.
+     * @return the entry, or null if not found.
+     */
+    protected Entry find(long key) {
+        Entry[] table = _table;
+        int mask = table.length - 1;
+        for (int i = index(key, mask);; i = (i + 1) & mask) {
+            Entry entry = table[i];
+            if (entry == null || entry.key == key) {
+                return entry;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add a new entry as the most recently used, then evict the least
+     * recently used entries in excess of hud.sampler.max-chunks.
+     *
+     * @param entry the entry, whose key must not already be present.
+     */
+    protected void insert(Entry entry) {
+        if (2 * (_size + 1) > _table.length) {
+            Entry[] old = _table;
+            _table = new Entry[2 * old.length];
+            for (Entry e : old) {
+                if (e != null) {
+                    place(e);
+                }
+            }
+        }
+        place(entry);
+        ++_size;
+        linkLast(entry);
+        while (_size > NerdPoints.CONFIG.HUD_SAMPLER_MAX_CHUNKS) {
+            remove(_lru.next);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Remove an entry from the table and the least recently used order.
+     *
+     * Entries that follow it in the same probe sequence are shifted back, so
+     * that no tombstones are needed.
+     *
+     * @param entry the entry, which must be present.
+     */
+    protected void remove(Entry entry) {
+        unlink(entry);
+        --_size;
+        Entry[] table = _table;
+        int mask = table.length - 1;
+        int hole = index(entry.key, mask);
+        while (table[hole] != entry) {
+            hole = (hole + 1) & mask;
+        }
+        table[hole] = null;
+        for (int i = (hole + 1) & mask; table[i] != null; i = (i + 1) & mask) {
+            // Move table[i] into the hole unless its home slot lies in
+            // (hole, i], where it would no longer be found.
+            int home = index(table[i].key, mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[hole] = table[i];
+                table[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Store an entry in the first free slot of its probe sequence.
+     *
+     * @param entry the entry.
+     */
+    protected void place(Entry entry) {
+        Entry[] table = _table;
+        int mask = table.length - 1;
+        int i = index(entry.key, mask);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Link an entry at the most recently used end of the order.
+     *
+     * @param entry the entry, which must be unlinked.
+     */
+    protected void linkLast(Entry entry) {
+        entry.prev = _lru.prev;
+        entry.next = _lru;
+        _lru.prev.next = entry;
+        _lru.prev = entry;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Unlink an entry from the least recently used order.
+     *
+     * @param entry the entry, which must be linked.
+     */
+    protected static void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the home slot of the specified key in a table.
+     *
+     * @param key the chunk key.
+     * @param mask the table length minus one.
+     * @return the index of the slot.
+     */
+    protected static int index(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the key of the specified chunk.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the key.
+     */
+    protected static long getKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A retained chunk snapshot.
+     */
+    protected static class Entry {
+        /**
+         * Constructor.
+         *
+         * @param key the chunk key.
+         */
+        Entry(long key) {
+            this.key = key;
+        }
+
+        /**
+         * The chunk key.
+         */
+        final long key;
+
+        /**
+         * The previous entry in least recently used order, or the list head.
+         */
+        Entry prev;
+
+        /**
+         * The next entry in least recently used order, or the list head.
+         */
+        Entry next;
+
+        /**
+         * The snapshot.
+         */
+        ChunkSnapshot snapshot;
+
+        /**
+         * True if blocks in the chunk have changed since the snapshot.
+         */
+        boolean stale;
+
+        /**
+         * The tick when the snapshot was taken.
+         */
+        long tick;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The height of the world in blocks.
+     */
+    static final int MAX_HEIGHT = 256;
+
+    /**
+     * The initial length of the hash table.
+     */
+    static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The world.
+     */
+    protected final World _world;
+
+    /**
+     * Open-addressed hash table of entries, with linear probing; its length
+     * is a power of two, at least twice the number of entries.
+     */
+    protected Entry[] _table = new Entry[INITIAL_CAPACITY];
+
+    /**
+     * The number of entries.
+     */
+    protected int _size;
+
+    /**
+     * Head of the circular list of entries, from least to most recently
+     * used; not itself an entry.
+     */
+    protected final Entry _lru = new Entry(0);
+
+    /**
+     * The number of snapshots that may still be taken in the current tick.
+     */
+    protected int _budget;
+
+    /**
+     * The number of ticks started.
+     */
+    protected long _tick;
+
+    /**
+     * The total number of chunk snapshots taken.
+     */
+    protected long _snapshotCount;
+} // class ChunkSampler
@@ -0,0 +1,127 @@
+package nu.nerd.nerdpoints;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+
+// ----------------------------------------------------------------------------
+/**
+ * A bounded, least-recently-used cache mapping HUD text to the chat components
+ * sent to the client.
+ *
+ * Parsing the legacy text into components is expensive, and many players see
+ * identical HUD text, so the cache is shared by all threads that update HUDs.
+ * Cached component arrays are shared between players and must not be
+ * modified.
+ */
+public class ComponentCache {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of entries.
+     */
+    public ComponentCache(int capacity) {
+        _capacity = capacity;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set the maximum number of entries, evicting the least recently used
+     * entries if necessary.
+     *
+     * @param capacity the maximum number of entries.
+     */
+    public synchronized void setCapacity(int capacity) {
+        _capacity = capacity;
+        Iterator<String> it = _map.keySet().iterator();
+        while (_map.size() > _capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the components that display the specified HUD text.
+     *
+     * @param text the HUD text, with '§'-prefixed colour codes.
+     * @return the components; the caller must not modify them.
+     */
+    public BaseComponent[] get(String text) {
+        BaseComponent[] components;
+        synchronized (this) {
+            components = _map.get(text);
+        }
+        if (components != null) {
+            _hits.increment();
+            return components;
+        }
+
+        _misses.increment();
+        components = LegacyText.toComponents(text);
+        synchronized (this) {
+            _map.put(text, components);
+        }
+        return components;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of entries in the cache.
+     *
+     * @return the number of entries in the cache.
+     */
+    public synchronized int size() {
+        return _map.size();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lookups that found cached components.
+     *
+     * @return the number of lookups that found cached components.
+     */
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lookups that had to build new components.
+     *
+     * @return the number of lookups that had to build new components.
+     */
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Maximum number of entries.
+     */
+    protected int _capacity;
+
+    /**
+     * Map from HUD text to components, in access order.
+     */
+    protected final LinkedHashMap<String, BaseComponent[]> _map = new LinkedHashMap<String, BaseComponent[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BaseComponent[]> eldest) {
+            return size() > _capacity;
+        }
+    };
+
+    /**
+     * Number of lookups that found cached components.
+     */
+    protected final LongAdder _hits = new LongAdder();
+
+    /**
+     * Number of lookups that had to build new components.
+     */
+    protected final LongAdder _misses = new LongAdder();
+} // class ComponentCache
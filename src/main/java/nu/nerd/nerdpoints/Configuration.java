@@ -2,6 +2,7 @@ package nu.nerd.nerdpoints;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -23,7 +24,8 @@ import nu.nerd.nerdpoints.format.Format;
 public class Configuration {
     // ------------------------------------------------------------------------
     /**
-     * Update period of the HUD in ticks.
+     * Update period of the HUD in ticks. Players are spread evenly across the
+     * ticks of the period.
      */
     public int HUD_UPDATE_TICKS;
 
@@ -34,10 +36,142 @@ public class Configuration {
     public boolean HUD_UPDATE_PARALLEL;
 
     /**
-     * When updating in parallel, give up if taking longer than this number of
-     * milliseconds.
+     * If true (hud.update.parallel is "auto"), choose between parallel and
+     * inline rendering each tick according to measured costs.
+     * HUD_UPDATE_PARALLEL is also true.
      */
-    public int HUD_UPDATE_TIMEOUT_MS;
+    public boolean HUD_UPDATE_ADAPTIVE;
+
+    /**
+     * The backend of the executor that renders HUDs in parallel: "fork-join",
+     * "fixed", "single" or "virtual".
+     */
+    public String HUD_UPDATE_EXECUTOR;
+
+    /**
+     * Number of threads of the fork-join and fixed HUD executors, or 0 for
+     * one per available processor.
+     */
+    public int HUD_UPDATE_THREADS;
+
+    /**
+     * Drop HUD snapshots that have not been rendered within this number of
+     * milliseconds of being captured.
+     */
+    public int HUD_UPDATE_MAX_SNAPSHOT_AGE_MS;
+
+    /**
+     * Maximum number of ticks' worth of parallel HUD work that may be queued
+     * or in progress; HUD updates are skipped while this many are pending.
+     */
+    public int HUD_UPDATE_MAX_PENDING_TICKS;
+
+    /**
+     * Maximum time in milliseconds between sends of unchanged HUD text, so
+     * that the client does not fade out the action bar.
+     */
+    public int HUD_UPDATE_KEEP_ALIVE_MS;
+
+    /**
+     * Maximum number of entries in the cache mapping HUD text to chat
+     * components.
+     */
+    public int HUD_UPDATE_COMPONENT_CACHE_SIZE;
+
+    /**
+     * Number of slots in the memo table of rendered section text shared by
+     * all players, or 0 to disable it.
+     */
+    public int HUD_UPDATE_SECTION_MEMO_SIZE;
+
+    /**
+     * If true, HUD text is expanded into reusable buffers, so that frames
+     * whose text is unchanged allocate no memory.
+     */
+    public boolean HUD_UPDATE_ZERO_ALLOCATION;
+
+    /**
+     * Minimum interval in ticks between re-renders of the biome section.
+     */
+    public int HUD_UPDATE_SECTIONS_BIOME_TICKS;
+
+    /**
+     * Minimum interval in ticks between re-renders of the chunk section.
+     */
+    public int HUD_UPDATE_SECTIONS_CHUNK_TICKS;
+
+    /**
+     * Minimum interval in ticks between re-renders of the compass section.
+     */
+    public int HUD_UPDATE_SECTIONS_COMPASS_TICKS;
+
+    /**
+     * Minimum interval in ticks between re-renders of the coords section.
+     */
+    public int HUD_UPDATE_SECTIONS_COORDS_TICKS;
+
+    /**
+     * Minimum interval in ticks between re-renders of the light section.
+     */
+    public int HUD_UPDATE_SECTIONS_LIGHT_TICKS;
+
+    /**
+     * Minimum interval in ticks between re-renders of the time section.
+     */
+    public int HUD_UPDATE_SECTIONS_TIME_TICKS;
+
+    /**
+     * Maximum number of chunk snapshots retained per world for reading biome
+     * and light levels.
+     */
+    public int HUD_SAMPLER_MAX_CHUNKS;
+
+    /**
+     * Maximum number of chunk snapshots taken per world per tick.
+     */
+    public int HUD_SAMPLER_SNAPSHOTS_PER_TICK;
+
+    /**
+     * Age in ticks after which a chunk snapshot is retaken.
+     */
+    public int HUD_SAMPLER_MAX_AGE_TICKS;
+
+    /**
+     * If true, HUD fidelity is lowered in stages as MSPT rises.
+     */
+    public boolean HUD_GOVERNOR_ENABLED;
+
+    /**
+     * MSPT above which the HUD update period is lengthened.
+     */
+    public double HUD_GOVERNOR_LONGER_INTERVALS_MSPT;
+
+    /**
+     * MSPT above which the biome and light sections are hidden.
+     */
+    public double HUD_GOVERNOR_NO_COSTLY_SECTIONS_MSPT;
+
+    /**
+     * MSPT above which unchanged HUD text is not resent.
+     */
+    public double HUD_GOVERNOR_CHANGES_ONLY_MSPT;
+
+    /**
+     * Amount in milliseconds by which MSPT must fall below a stage's threshold
+     * before the stage can be left.
+     */
+    public double HUD_GOVERNOR_HYSTERESIS_MSPT;
+
+    /**
+     * Number of consecutive ticks that MSPT must stay low before a stage is
+     * left.
+     */
+    public int HUD_GOVERNOR_RECOVER_TICKS;
+
+    /**
+     * Multiplier of the HUD update period when intervals are lengthened.
+     */
+    public int HUD_GOVERNOR_INTERVAL_MULTIPLIER;
 
     /**
      * Default HUD visibility.
@@ -109,6 +243,13 @@ public class Configuration {
      */
     public Format HUD_DEFAULT_TIME_FORMAT;
 
+    /**
+     * Named HUD formats that players can select with /hud preset.
+     * 
+     * Keys are lower case preset names, in configuration order.
+     */
+    public LinkedHashMap<String, Format> HUD_PRESETS = new LinkedHashMap<>();
+
     /**
      * Overridden biome names.
      * 
@@ -146,9 +287,39 @@ public class Configuration {
         FileConfiguration config = NerdPoints.PLUGIN.getConfig();
         Logger logger = NerdPoints.PLUGIN.getLogger();
 
-        HUD_UPDATE_TICKS = config.getInt("hud.update.ticks");
-        HUD_UPDATE_PARALLEL = config.getBoolean("hud.update.parallel");
-        HUD_UPDATE_TIMEOUT_MS = config.getInt("hud.update.timeout-ms");
+        HUD_UPDATE_TICKS = getInt(config, "hud.update.ticks", 1, MAX_SECTION_TICKS);
+        String parallel = config.getString("hud.update.parallel");
+        HUD_UPDATE_ADAPTIVE = "auto".equalsIgnoreCase(parallel);
+        HUD_UPDATE_PARALLEL = HUD_UPDATE_ADAPTIVE || "true".equalsIgnoreCase(parallel);
+        HUD_UPDATE_EXECUTOR = config.getString("hud.update.executor");
+        HUD_UPDATE_THREADS = getInt(config, "hud.update.threads", 0, MAX_THREADS);
+        HUD_UPDATE_MAX_SNAPSHOT_AGE_MS = getInt(config, "hud.update.max-snapshot-age-ms", 1, MAX_MILLIS);
+        if (config.isSet("hud.update.timeout-ms")) {
+            // Formerly how long the main thread waited for parallel rendering;
+            // its typical value of 3 would drop most frames as a snapshot age.
+            logger.warning("hud.update.timeout-ms is obsolete and ignored; see hud.update.max-snapshot-age-ms.");
+        }
+        HUD_UPDATE_MAX_PENDING_TICKS = getInt(config, "hud.update.max-pending-ticks", 1, MAX_SECTION_TICKS);
+        HUD_UPDATE_KEEP_ALIVE_MS = getInt(config, "hud.update.keep-alive-ms", 0, MAX_MILLIS);
+        HUD_UPDATE_COMPONENT_CACHE_SIZE = getInt(config, "hud.update.component-cache-size", 0, MAX_CACHE_SIZE);
+        HUD_UPDATE_SECTION_MEMO_SIZE = getInt(config, "hud.update.section-memo-size", 0, SectionMemo.MAX_CAPACITY);
+        HUD_UPDATE_ZERO_ALLOCATION = config.getBoolean("hud.update.zero-allocation");
+        HUD_UPDATE_SECTIONS_BIOME_TICKS = getInt(config, "hud.update.sections.biome.ticks", 1, MAX_SECTION_TICKS);
+        HUD_UPDATE_SECTIONS_CHUNK_TICKS = getInt(config, "hud.update.sections.chunk.ticks", 1, MAX_SECTION_TICKS);
+        HUD_UPDATE_SECTIONS_COMPASS_TICKS = getInt(config, "hud.update.sections.compass.ticks", 1, MAX_SECTION_TICKS);
+        HUD_UPDATE_SECTIONS_COORDS_TICKS = getInt(config, "hud.update.sections.coords.ticks", 1, MAX_SECTION_TICKS);
+        HUD_UPDATE_SECTIONS_LIGHT_TICKS = getInt(config, "hud.update.sections.light.ticks", 1, MAX_SECTION_TICKS);
+        HUD_UPDATE_SECTIONS_TIME_TICKS = getInt(config, "hud.update.sections.time.ticks", 1, MAX_SECTION_TICKS);
+        HUD_SAMPLER_MAX_CHUNKS = getInt(config, "hud.sampler.max-chunks", 1, MAX_CACHE_SIZE);
+        HUD_SAMPLER_SNAPSHOTS_PER_TICK = getInt(config, "hud.sampler.snapshots-per-tick", 0, MAX_CACHE_SIZE);
+        HUD_SAMPLER_MAX_AGE_TICKS = getInt(config, "hud.sampler.max-age-ticks", 1, MAX_SECTION_TICKS);
+        HUD_GOVERNOR_ENABLED = config.getBoolean("hud.governor.enabled");
+        HUD_GOVERNOR_LONGER_INTERVALS_MSPT = getDouble(config, "hud.governor.longer-intervals-mspt", 0, MAX_MILLIS);
+        HUD_GOVERNOR_NO_COSTLY_SECTIONS_MSPT = getDouble(config, "hud.governor.no-costly-sections-mspt", 0, MAX_MILLIS);
+        HUD_GOVERNOR_CHANGES_ONLY_MSPT = getDouble(config, "hud.governor.changes-only-mspt", 0, MAX_MILLIS);
+        HUD_GOVERNOR_HYSTERESIS_MSPT = getDouble(config, "hud.governor.hysteresis-mspt", 0, MAX_MILLIS);
+        HUD_GOVERNOR_RECOVER_TICKS = getInt(config, "hud.governor.recover-ticks", 1, MAX_RECOVER_TICKS);
+        HUD_GOVERNOR_INTERVAL_MULTIPLIER = getInt(config, "hud.governor.interval-multiplier", 1, MAX_INTERVAL_MULTIPLIER);
 
         HUD_DEFAULT_HUD_VISIBLE = config.getBoolean("hud.default.hud-visible");
         HUD_DEFAULT_BIOME_VISIBLE = config.getBoolean("hud.default.biome-visible");
@@ -158,20 +329,28 @@ public class Configuration {
         HUD_DEFAULT_LIGHT_VISIBLE = config.getBoolean("hud.default.light-visible");
         HUD_DEFAULT_TIME_VISIBLE = config.getBoolean("hud.default.time-visible");
 
-        HUD_DEFAULT_HUD_FORMAT = new Format(config.getString("hud.default.hud-format"));
-        HUD_DEFAULT_BIOME_FORMAT = new Format(config.getString("hud.default.biome-format"));
-        HUD_DEFAULT_CHUNK_FORMAT = new Format(config.getString("hud.default.chunk-format"));
-        HUD_DEFAULT_COMPASS_FORMAT = new Format(config.getString("hud.default.compass-format"));
-        HUD_DEFAULT_COORDS_FORMAT = new Format(config.getString("hud.default.coords-format"));
-        HUD_DEFAULT_LIGHT_FORMAT = new Format(config.getString("hud.default.light-format"));
-        HUD_DEFAULT_TIME_FORMAT = new Format(config.getString("hud.default.time-format"));
+        HUD_DEFAULT_HUD_FORMAT = Format.intern(config.getString("hud.default.hud-format"));
+        HUD_DEFAULT_BIOME_FORMAT = Format.intern(config.getString("hud.default.biome-format"));
+        HUD_DEFAULT_CHUNK_FORMAT = Format.intern(config.getString("hud.default.chunk-format"));
+        HUD_DEFAULT_COMPASS_FORMAT = Format.intern(config.getString("hud.default.compass-format"));
+        HUD_DEFAULT_COORDS_FORMAT = Format.intern(config.getString("hud.default.coords-format"));
+        HUD_DEFAULT_LIGHT_FORMAT = Format.intern(config.getString("hud.default.light-format"));
+        HUD_DEFAULT_TIME_FORMAT = Format.intern(config.getString("hud.default.time-format"));
+
+        HUD_PRESETS.clear();
+        ConfigurationSection presets = config.getConfigurationSection("hud.presets");
+        if (presets != null) {
+            for (String key : presets.getKeys(false)) {
+                HUD_PRESETS.put(key.toLowerCase(), Format.intern(presets.getString(key)));
+            }
+        }
 
         HUD_BIOME_NAMES.clear();
         ConfigurationSection biomeNames = config.getConfigurationSection("hud.biome-names");
         for (String key : biomeNames.getKeys(false)) {
             try {
                 Biome biome = Biome.valueOf(key.toUpperCase());
-                HUD_BIOME_NAMES.put(biome, biomeNames.getString(key));
+                HUD_BIOME_NAMES.put(biome, Format.translateColourCodes(biomeNames.getString(key)));
             } catch (IllegalArgumentException ex) {
                 logger.info("Invalid biome name: " + key);
             }
@@ -192,7 +371,31 @@ public class Configuration {
             logger.info("Configuration:");
             logger.info("HUD_UPDATE_TICKS: " + HUD_UPDATE_TICKS);
             logger.info("HUD_UPDATE_PARALLEL: " + HUD_UPDATE_PARALLEL);
-            logger.info("HUD_UPDATE_TIMEOUT_MS: " + HUD_UPDATE_TIMEOUT_MS);
+            logger.info("HUD_UPDATE_ADAPTIVE: " + HUD_UPDATE_ADAPTIVE);
+            logger.info("HUD_UPDATE_EXECUTOR: " + HUD_UPDATE_EXECUTOR);
+            logger.info("HUD_UPDATE_THREADS: " + HUD_UPDATE_THREADS);
+            logger.info("HUD_UPDATE_MAX_SNAPSHOT_AGE_MS: " + HUD_UPDATE_MAX_SNAPSHOT_AGE_MS);
+            logger.info("HUD_UPDATE_MAX_PENDING_TICKS: " + HUD_UPDATE_MAX_PENDING_TICKS);
+            logger.info("HUD_UPDATE_KEEP_ALIVE_MS: " + HUD_UPDATE_KEEP_ALIVE_MS);
+            logger.info("HUD_UPDATE_COMPONENT_CACHE_SIZE: " + HUD_UPDATE_COMPONENT_CACHE_SIZE);
+            logger.info("HUD_UPDATE_SECTION_MEMO_SIZE: " + HUD_UPDATE_SECTION_MEMO_SIZE);
+            logger.info("HUD_UPDATE_ZERO_ALLOCATION: " + HUD_UPDATE_ZERO_ALLOCATION);
+            logger.info("HUD_UPDATE_SECTIONS_BIOME_TICKS: " + HUD_UPDATE_SECTIONS_BIOME_TICKS);
+            logger.info("HUD_UPDATE_SECTIONS_CHUNK_TICKS: " + HUD_UPDATE_SECTIONS_CHUNK_TICKS);
+            logger.info("HUD_UPDATE_SECTIONS_COMPASS_TICKS: " + HUD_UPDATE_SECTIONS_COMPASS_TICKS);
+            logger.info("HUD_UPDATE_SECTIONS_COORDS_TICKS: " + HUD_UPDATE_SECTIONS_COORDS_TICKS);
+            logger.info("HUD_UPDATE_SECTIONS_LIGHT_TICKS: " + HUD_UPDATE_SECTIONS_LIGHT_TICKS);
+            logger.info("HUD_UPDATE_SECTIONS_TIME_TICKS: " + HUD_UPDATE_SECTIONS_TIME_TICKS);
+            logger.info("HUD_SAMPLER_MAX_CHUNKS: " + HUD_SAMPLER_MAX_CHUNKS);
+            logger.info("HUD_SAMPLER_SNAPSHOTS_PER_TICK: " + HUD_SAMPLER_SNAPSHOTS_PER_TICK);
+            logger.info("HUD_SAMPLER_MAX_AGE_TICKS: " + HUD_SAMPLER_MAX_AGE_TICKS);
+            logger.info("HUD_GOVERNOR_ENABLED: " + HUD_GOVERNOR_ENABLED);
+            logger.info("HUD_GOVERNOR_LONGER_INTERVALS_MSPT: " + HUD_GOVERNOR_LONGER_INTERVALS_MSPT);
+            logger.info("HUD_GOVERNOR_NO_COSTLY_SECTIONS_MSPT: " + HUD_GOVERNOR_NO_COSTLY_SECTIONS_MSPT);
+            logger.info("HUD_GOVERNOR_CHANGES_ONLY_MSPT: " + HUD_GOVERNOR_CHANGES_ONLY_MSPT);
+            logger.info("HUD_GOVERNOR_HYSTERESIS_MSPT: " + HUD_GOVERNOR_HYSTERESIS_MSPT);
+            logger.info("HUD_GOVERNOR_RECOVER_TICKS: " + HUD_GOVERNOR_RECOVER_TICKS);
+            logger.info("HUD_GOVERNOR_INTERVAL_MULTIPLIER: " + HUD_GOVERNOR_INTERVAL_MULTIPLIER);
             logger.info("HUD_DEFAULT_HUD_VISIBLE: " + HUD_DEFAULT_HUD_VISIBLE);
             logger.info("HUD_DEFAULT_BIOME_VISIBLE: " + HUD_DEFAULT_BIOME_VISIBLE);
             logger.info("HUD_DEFAULT_CHUNK_VISIBLE: " + HUD_DEFAULT_CHUNK_VISIBLE);
@@ -209,6 +412,11 @@ public class Configuration {
             logger.info("HUD_DEFAULT_LIGHT_FORMAT: " + HUD_DEFAULT_LIGHT_FORMAT);
             logger.info("HUD_DEFAULT_TIME_FORMAT: " + HUD_DEFAULT_TIME_FORMAT);
 
+            logger.info("HUD presets:");
+            for (Entry<String, Format> entry : HUD_PRESETS.entrySet()) {
+                logger.info(entry.getKey() + " -> " + entry.getValue());
+            }
+
             logger.info("Biome names:");
             for (Entry<Biome, String> entry : HUD_BIOME_NAMES.entrySet()) {
                 logger.info(entry.getKey().name() + " -> " + entry.getValue());
@@ -219,4 +427,82 @@ public class Configuration {
                         .map(Material::toString).collect(Collectors.joining(" ")));
         }
     } // reload
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return an integer setting, clamped to the specified range.
+     * 
+     * A value outside the range is logged as a warning.
+     * 
+     * @param config the configuration.
+     * @param path the path of the setting.
+     * @param min the minimum value.
+     * @param max the maximum value.
+     * @return the clamped value.
+     */
+    protected static int getInt(FileConfiguration config, String path, int min, int max) {
+        int value = config.getInt(path);
+        if (value < min || value > max) {
+            int clamped = Math.max(min, Math.min(max, value));
+            NerdPoints.PLUGIN.getLogger().warning(path + " must be between " + min + " and " + max +
+                                                  "; using " + clamped + ".");
+            return clamped;
+        }
+        return value;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a floating point setting, clamped to the specified range.
+     * 
+     * A value outside the range is logged as a warning.
+     * 
+     * @param config the configuration.
+     * @param path the path of the setting.
+     * @param min the minimum value.
+     * @param max the maximum value.
+     * @return the clamped value.
+     */
+    protected static double getDouble(FileConfiguration config, String path, double min, double max) {
+        double value = config.getDouble(path);
+        if (!(value >= min && value <= max)) {
+            double clamped = Double.isNaN(value) ? min : Math.max(min, Math.min(max, value));
+            NerdPoints.PLUGIN.getLogger().warning(path + " must be between " + min + " and " + max +
+                                                  "; using " + clamped + ".");
+            return clamped;
+        }
+        return value;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The maximum refresh interval in ticks of the HUD and its sections, which
+     * also bounds other settings measured in ticks.
+     */
+    public static final int MAX_SECTION_TICKS = 200;
+
+    /**
+     * The maximum number of HUD rendering threads.
+     */
+    static final int MAX_THREADS = 256;
+
+    /**
+     * The maximum of settings in milliseconds and MSPT.
+     */
+    static final int MAX_MILLIS = 60000;
+
+    /**
+     * The maximum size of caches and per-tick budgets.
+     */
+    static final int MAX_CACHE_SIZE = 1 << 20;
+
+    /**
+     * The maximum number of ticks before the HUD governor recovers a stage.
+     */
+    static final int MAX_RECOVER_TICKS = 72000;
+
+    /**
+     * The maximum multiplier of the HUD update period.
+     */
+    static final int MAX_INTERVAL_MULTIPLIER = 20;
 } // class Configuration
\ No newline at end of file
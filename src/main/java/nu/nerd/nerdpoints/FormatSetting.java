@@ -40,6 +40,6 @@ public class FormatSetting extends PlayerSetting<Format> {
     @Override
     public void load(ConfigurationSection section) {
         String value = section.getString(_key);
-        set(value != null ? new Format(value) : null);
+        set(value != null ? Format.intern(value) : null);
     }
 } // class FormatSetting
\ No newline at end of file
@@ -0,0 +1,155 @@
+package nu.nerd.nerdpoints;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ----------------------------------------------------------------------------
+/**
+ * Per-tick counts of HUD frames that were not shown.
+ *
+ * <ul>
+ * <li>Skipped frames were never captured or never rendered: the player's
+ * previous frame was still rendering when they were due for an update, the
+ * renderer was too far behind to accept more work, or a snapshot was
+ * superseded by a newer one before it was rendered.</li>
+ * <li>Late frames were rendered too late, or out of order, and were
+ * discarded rather than sent.</li>
+ * </ul>
+ *
+ * Counts accumulate over each tick, from any thread, and are rolled over into
+ * the previous tick's counts, the maximum per tick and the totals by
+ * {@link #startTick()} on the main thread.
+ */
+public class FrameStats {
+    // ------------------------------------------------------------------------
+    /**
+     * Start a new tick, rolling over the counts of the tick just finished.
+     *
+     * Late frames are counted in the tick in which they are discarded, which
+     * may be after the tick in which they were captured.
+     */
+    public void startTick() {
+        _lastSkipped = _skipped.getAndSet(0);
+        _lastLate = _late.getAndSet(0);
+        _totalSkipped += _lastSkipped;
+        _totalLate += _lastLate;
+        _maxSkipped = Math.max(_maxSkipped, _lastSkipped);
+        _maxLate = Math.max(_maxLate, _lastLate);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Count a skipped frame.
+     */
+    public void skip() {
+        _skipped.incrementAndGet();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Count a late frame.
+     */
+    public void late() {
+        _late.incrementAndGet();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of frames skipped in the previous tick.
+     *
+     * @return the number of frames skipped in the previous tick.
+     */
+    public int getLastSkipped() {
+        return _lastSkipped;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of late frames discarded in the previous tick.
+     *
+     * @return the number of late frames discarded in the previous tick.
+     */
+    public int getLastLate() {
+        return _lastLate;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the largest number of frames skipped in one tick.
+     *
+     * @return the largest number of frames skipped in one tick.
+     */
+    public int getMaxSkipped() {
+        return _maxSkipped;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the largest number of late frames discarded in one tick.
+     *
+     * @return the largest number of late frames discarded in one tick.
+     */
+    public int getMaxLate() {
+        return _maxLate;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total number of frames skipped.
+     *
+     * @return the total number of frames skipped.
+     */
+    public long getTotalSkipped() {
+        return _totalSkipped;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total number of late frames discarded.
+     *
+     * @return the total number of late frames discarded.
+     */
+    public long getTotalLate() {
+        return _totalLate;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Frames skipped in the current tick.
+     */
+    protected final AtomicInteger _skipped = new AtomicInteger();
+
+    /**
+     * Late frames discarded in the current tick.
+     */
+    protected final AtomicInteger _late = new AtomicInteger();
+
+    /**
+     * Frames skipped in the previous tick; accessed by the main thread.
+     */
+    protected int _lastSkipped;
+
+    /**
+     * Late frames discarded in the previous tick; accessed by the main thread.
+     */
+    protected int _lastLate;
+
+    /**
+     * The largest number of frames skipped in one tick.
+     */
+    protected int _maxSkipped;
+
+    /**
+     * The largest number of late frames discarded in one tick.
+     */
+    protected int _maxLate;
+
+    /**
+     * Total frames skipped.
+     */
+    protected long _totalSkipped;
+
+    /**
+     * Total late frames discarded.
+     */
+    protected long _totalLate;
+} // class FrameStats
@@ -0,0 +1,344 @@
+package nu.nerd.nerdpoints;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import org.bukkit.Bukkit;
+
+// ----------------------------------------------------------------------------
+/**
+ * Lowers the fidelity of the HUD in stages as the server's tick duration
+ * (MSPT, milliseconds per tick) rises, so that the HUD sheds load before the
+ * server falls below 20 TPS.
+ *
+ * The stages are cumulative:
+ * <ol>
+ * <li>Longer refresh intervals: the HUD update period is multiplied by
+ * hud.governor.interval-multiplier.</li>
+ * <li>No costly sections: the biome and light sections, which read chunk
+ * data, are hidden.</li>
+ * <li>Changes only: unchanged HUD text is not resent to keep it showing.</li>
+ * </ol>
+ *
+ * MSPT is sampled every tick. A stage is entered, one stage per tick, when
+ * MSPT exceeds its configured threshold. The governor recovers one stage at
+ * a time, when MSPT has stayed below the current stage's threshold less
+ * hud.governor.hysteresis-mspt for hud.governor.recover-ticks consecutive
+ * ticks. Stage changes are logged.
+ *
+ * MSPT is read from the server's average tick time where the server provides
+ * it (Paper). Otherwise (Spigot) it is a moving average of the main thread's
+ * busy time per tick: the CPU time it used since the previous tick, or the
+ * interval between ticks when that shows the tick overran. CPU time excludes
+ * time the main thread spends blocked, e.g. on disk, until the tick overruns.
+ *
+ * If the JVM cannot measure thread CPU time, or that measurement is disabled,
+ * MSPT is estimated from the interval between ticks alone. The governor does
+ * not enable the measurement itself, since that setting affects the whole
+ * JVM. That cannot fall below the 50 ms tick period,
+ * so thresholds are raised to at least MIN_INTERVAL_MSPT, and the governor
+ * only reacts once the server has fallen below 20 TPS.
+ *
+ * All methods except the stage getters must be called from the main thread.
+ */
+public class HudGovernor {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     */
+    public HudGovernor() {
+        Method averageTickTime = null;
+        try {
+            averageTickTime = Bukkit.getServer().getClass().getMethod("getAverageTickTime");
+        } catch (NoSuchMethodException | SecurityException ex) {
+            // Not Paper.
+        }
+        _averageTickTime = averageTickTime;
+
+        ThreadMXBean threads = null;
+        if (averageTickTime == null) {
+            threads = ManagementFactory.getThreadMXBean();
+            try {
+                if (!threads.isCurrentThreadCpuTimeSupported()) {
+                    threads = null;
+                } else if (!threads.isThreadCpuTimeEnabled()) {
+                    NerdPoints.PLUGIN.getLogger().info("HUD governor: thread CPU time measurement is disabled " +
+                                                       "in this JVM.");
+                    threads = null;
+                }
+            } catch (UnsupportedOperationException | SecurityException ex) {
+                threads = null;
+            }
+        }
+        _threads = threads;
+        _mspt = isIntervalOnly() ? TICK_MILLIS : 0;
+        NerdPoints.PLUGIN.getLogger().info("HUD governor: measuring MSPT from " + getSource() + ".");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sample MSPT and change stage if necessary.
+     *
+     * This must be called once per tick.
+     */
+    public void sample() {
+        long now = System.nanoTime();
+        double interval = (_lastSampleNanos != 0) ? (now - _lastSampleNanos) / 1e6 : TICK_MILLIS;
+        _lastSampleNanos = now;
+        long cpuNow = (_threads != null) ? _threads.getCurrentThreadCpuTime() : 0;
+        double cpu = (_lastCpuNanos != 0) ? (cpuNow - _lastCpuNanos) / 1e6 : 0;
+        _lastCpuNanos = cpuNow;
+        _mspt = readMspt(interval, cpu);
+
+        if (!NerdPoints.CONFIG.HUD_GOVERNOR_ENABLED) {
+            setStage(STAGE_NONE);
+            return;
+        }
+
+        int stage = _stage;
+        if (stage < MAX_STAGE && _mspt > getThreshold(stage + 1)) {
+            _recoverTicks = 0;
+            setStage(stage + 1);
+        } else if (stage > STAGE_NONE && _mspt < getThreshold(stage) - NerdPoints.CONFIG.HUD_GOVERNOR_HYSTERESIS_MSPT) {
+            if (++_recoverTicks >= NerdPoints.CONFIG.HUD_GOVERNOR_RECOVER_TICKS) {
+                _recoverTicks = 0;
+                setStage(stage - 1);
+            }
+        } else {
+            _recoverTicks = 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the current stage, from STAGE_NONE (full fidelity) to MAX_STAGE.
+     *
+     * @return the current stage.
+     */
+    public int getStage() {
+        return _stage;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if HUD refresh intervals are lengthened.
+     *
+     * @return true if HUD refresh intervals are lengthened.
+     */
+    public boolean isLongerIntervals() {
+        return _stage >= STAGE_LONGER_INTERVALS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if costly HUD sections (biome and light) are hidden.
+     *
+     * @return true if costly HUD sections are hidden.
+     */
+    public boolean isHidingCostlySections() {
+        return _stage >= STAGE_NO_COSTLY_SECTIONS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if only changed HUD text is sent.
+     *
+     * @return true if only changed HUD text is sent.
+     */
+    public boolean isChangesOnly() {
+        return _stage >= STAGE_CHANGES_ONLY;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most recently sampled MSPT.
+     *
+     * @return the most recently sampled MSPT.
+     */
+    public double getMspt() {
+        return _mspt;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if MSPT is estimated from the interval between ticks alone,
+     * which only rises above 50 once the server falls below 20 TPS.
+     *
+     * @return true if MSPT is estimated from the interval between ticks.
+     */
+    public boolean isIntervalOnly() {
+        return _averageTickTime == null && _threads == null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the source of MSPT, for logging and stats: "server tick time",
+     * "main thread busy time" or "tick interval".
+     *
+     * @return the source of MSPT.
+     */
+    public String getSource() {
+        return (_averageTickTime != null) ? "server tick time"
+                                          : (_threads != null) ? "main thread busy time" : "tick interval";
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the MSPT above which the specified stage is entered.
+     *
+     * @param stage the stage, from 1 to MAX_STAGE.
+     * @return the threshold in milliseconds.
+     */
+    public double getThreshold(int stage) {
+        double threshold;
+        switch (stage) {
+        case STAGE_LONGER_INTERVALS:
+            threshold = NerdPoints.CONFIG.HUD_GOVERNOR_LONGER_INTERVALS_MSPT;
+            break;
+        case STAGE_NO_COSTLY_SECTIONS:
+            threshold = NerdPoints.CONFIG.HUD_GOVERNOR_NO_COSTLY_SECTIONS_MSPT;
+            break;
+        default:
+            threshold = NerdPoints.CONFIG.HUD_GOVERNOR_CHANGES_ONLY_MSPT;
+            break;
+        }
+        return isIntervalOnly() ? Math.max(threshold, MIN_INTERVAL_MSPT) : threshold;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the current MSPT: the server's average tick time, or else a
+     * moving average of the main thread's busy time per tick.
+     *
+     * When the server keeps up, it sleeps out the rest of each 50 ms tick, so
+     * the main thread's CPU time measures how busy it was. When a tick
+     * overruns, there is no sleep and the interval itself is the busy time,
+     * including any time spent blocked.
+     *
+     * @param interval the interval since the previous tick in milliseconds.
+     * @param cpu the main thread's CPU time since the previous tick in
+     *        milliseconds, or 0 if not measured.
+     * @return the MSPT.
+     */
+    protected double readMspt(double interval, double cpu) {
+        if (_averageTickTime != null) {
+            try {
+                return ((Number) _averageTickTime.invoke(Bukkit.getServer())).doubleValue();
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                // Fall through to the estimate.
+            }
+        }
+        double busy = (_threads == null || interval >= OVERRUN_MILLIS) ? Math.max(interval, cpu) : cpu;
+        return _mspt + SMOOTHING * (busy - _mspt);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Change to the specified stage, logging the change and applying it.
+     *
+     * @param stage the new stage.
+     */
+    protected void setStage(int stage) {
+        int oldStage = _stage;
+        if (stage == oldStage) {
+            return;
+        }
+        _stage = stage;
+        NerdPoints.PLUGIN.getLogger().info(String.format("HUD governor: stage %d -> %d (%s) at %.1f MSPT.",
+                                                         oldStage, stage, STAGE_NAMES[stage], _mspt));
+        NerdPoints.PLUGIN.applyHudGovernorStage(oldStage, stage);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stage: full fidelity.
+     */
+    public static final int STAGE_NONE = 0;
+
+    /**
+     * Stage: longer refresh intervals.
+     */
+    public static final int STAGE_LONGER_INTERVALS = 1;
+
+    /**
+     * Stage: costly sections hidden, as well as longer refresh intervals.
+     */
+    public static final int STAGE_NO_COSTLY_SECTIONS = 2;
+
+    /**
+     * Stage: only changed text sent, as well as the previous stages.
+     */
+    public static final int STAGE_CHANGES_ONLY = 3;
+
+    /**
+     * The highest stage.
+     */
+    public static final int MAX_STAGE = STAGE_CHANGES_ONLY;
+
+    /**
+     * Names of the stages, indexed by stage, for logging and stats.
+     */
+    public static final String[] STAGE_NAMES = {
+        "full fidelity", "longer intervals", "no costly sections", "changes only"
+    };
+
+    /**
+     * Duration of a tick at 20 TPS, in milliseconds.
+     */
+    static final double TICK_MILLIS = 50;
+
+    /**
+     * An interval between ticks at least this long, in milliseconds, shows
+     * that the tick overran, rather than jitter in the scheduler's sleep.
+     */
+    static final double OVERRUN_MILLIS = 55;
+
+    /**
+     * The lowest threshold used when MSPT is estimated from tick intervals
+     * alone, which hover around TICK_MILLIS while the server keeps up.
+     */
+    static final double MIN_INTERVAL_MSPT = 52;
+
+    /**
+     * Weight of each tick's busy time in the estimated MSPT.
+     */
+    static final double SMOOTHING = 0.05;
+
+    /**
+     * The server's getAverageTickTime() method, or null if not provided.
+     */
+    protected final Method _averageTickTime;
+
+    /**
+     * Measures the main thread's CPU time, or null if MSPT is read from the
+     * server or the JVM cannot measure it.
+     */
+    protected final ThreadMXBean _threads;
+
+    /**
+     * The System.nanoTime() of the previous sample, or 0 if none.
+     */
+    protected long _lastSampleNanos;
+
+    /**
+     * The main thread's CPU time at the previous sample, or 0 if none.
+     */
+    protected long _lastCpuNanos;
+
+    /**
+     * The most recently sampled MSPT.
+     */
+    protected double _mspt;
+
+    /**
+     * Consecutive ticks that MSPT has been low enough to leave the current
+     * stage.
+     */
+    protected int _recoverTicks;
+
+    /**
+     * The current stage; read by rendering threads.
+     */
+    protected volatile int _stage;
+} // class HudGovernor
@@ -0,0 +1,202 @@
+package nu.nerd.nerdpoints;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * Spreads HUD updates evenly across the HUD update period.
+ *
+ * Players are divided into one shard per tick of the period. A single task,
+ * repeating every tick, updates the players in one shard per tick, so that
+ * each player is updated once per period and the per-tick cost is flat,
+ * rather than a spike on one tick in every period.
+ *
+ * A joining player is assigned the shard selected by their UUID hash, unless
+ * that shard is already larger than the smallest shard, in which case they go
+ * in the smallest. When a player quits, a player from the largest shard is
+ * moved into the vacated shard if that evens out the sizes. Shard sizes
+ * therefore never differ by more than one.
+ *
+ * All methods must be called from the main thread.
+ */
+public class HudScheduler implements Runnable {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param plugin the plugin, whose updateActionBars() method is called to
+     *        update each shard.
+     * @param period the HUD update period in ticks.
+     */
+    public HudScheduler(NerdPoints plugin, int period) {
+        _plugin = plugin;
+        setPeriod(period);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set the HUD update period, redistributing players across the new number
+     * of shards.
+     *
+     * @param period the HUD update period in ticks; values less than 1 are
+     *        treated as 1.
+     */
+    public void setPeriod(int period) {
+        period = Math.max(1, period);
+        if (_shards != null && period == _shards.size()) {
+            return;
+        }
+
+        List<PlayerState> states = new ArrayList<>();
+        if (_shards != null) {
+            for (List<PlayerState> shard : _shards) {
+                states.addAll(shard);
+            }
+        }
+
+        _shards = new ArrayList<>(period);
+        for (int i = 0; i < period; ++i) {
+            _shards.add(new ArrayList<>());
+        }
+        for (PlayerState state : states) {
+            add(state);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the HUD update period in ticks.
+     *
+     * @return the HUD update period in ticks.
+     */
+    public int getPeriod() {
+        return _shards.size();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add a player to the shard that will update their HUD.
+     *
+     * @param state the player's state.
+     */
+    public void add(PlayerState state) {
+        int smallest = getSmallestShard();
+        int preferred = Math.floorMod(state.getPlayer().getUniqueId().hashCode(), _shards.size());
+        int index = (_shards.get(preferred).size() > _shards.get(smallest).size()) ? smallest : preferred;
+        _shards.get(index).add(state);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Remove a player from their shard, and rebalance the shards.
+     *
+     * @param state the player's state.
+     */
+    public void remove(PlayerState state) {
+        for (int index = 0; index < _shards.size(); ++index) {
+            List<PlayerState> shard = _shards.get(index);
+            if (shard.remove(state)) {
+                List<PlayerState> largest = _shards.get(getLargestShard());
+                if (largest.size() > shard.size() + 1) {
+                    shard.add(largest.remove(largest.size() - 1));
+                }
+                return;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of players in each shard.
+     *
+     * @return the number of players in each shard, indexed by the tick within
+     *         the period on which the shard is updated.
+     */
+    public int[] getShardSizes() {
+        int[] sizes = new int[_shards.size()];
+        for (int i = 0; i < sizes.length; ++i) {
+            sizes[i] = _shards.get(i).size();
+        }
+        return sizes;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of ticks this task has run.
+     *
+     * @return the number of ticks this task has run.
+     */
+    public long getTicks() {
+        return _ticks;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Update the HUDs of the players in the shard for the current tick.
+     *
+     * The shard is selected by a count of the ticks this task has run, rather
+     * than by rescheduling the task after each update, so the phase of each
+     * shard stays fixed regardless of how long updates take.
+     */
+    @Override
+    public void run() {
+        ++_ticks;
+        _tick = (_tick + 1) % _shards.size();
+        _plugin.updateActionBars(_shards.get(_tick));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the index of the shard containing the fewest players.
+     *
+     * @return the index of the shard containing the fewest players.
+     */
+    protected int getSmallestShard() {
+        int smallest = 0;
+        for (int i = 1; i < _shards.size(); ++i) {
+            if (_shards.get(i).size() < _shards.get(smallest).size()) {
+                smallest = i;
+            }
+        }
+        return smallest;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the index of the shard containing the most players.
+     *
+     * @return the index of the shard containing the most players.
+     */
+    protected int getLargestShard() {
+        int largest = 0;
+        for (int i = 1; i < _shards.size(); ++i) {
+            if (_shards.get(i).size() > _shards.get(largest).size()) {
+                largest = i;
+            }
+        }
+        return largest;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The plugin.
+     */
+    protected final NerdPoints _plugin;
+
+    /**
+     * The shards, indexed by the tick within the period on which they are
+     * updated.
+     */
+    protected List<List<PlayerState>> _shards;
+
+    /**
+     * The tick within the period; the index of the shard last updated.
+     */
+    protected int _tick;
+
+    /**
+     * The number of ticks this task has run.
+     */
+    protected long _ticks;
+} // class HudScheduler
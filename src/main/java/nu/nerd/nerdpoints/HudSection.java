@@ -0,0 +1,366 @@
+package nu.nerd.nerdpoints;
+
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+import nu.nerd.nerdpoints.format.Format;
+import nu.nerd.nerdpoints.format.Scope;
+import nu.nerd.nerdpoints.format.ScopeSchema;
+import nu.nerd.nerdpoints.format.TextAppender;
+
+// ----------------------------------------------------------------------------
+/**
+ * One section of the HUD (biome, chunk, compass, etc.), supplied to the HUD
+ * Scope as the value of the corresponding variable.
+ *
+ * Sections are rendered lazily: the text is only computed when the HUD format
+ * actually references the section's variable, in the order in which the
+ * format references them. A section that is not visible renders as the empty
+ * string without consulting its format.
+ *
+ * The rendered text is retained between frames. Each variable of the
+ * section's Scope declares the {@link HudSnapshot} inputs it depends upon, and
+ * the section is only re-rendered when one of the inputs of the variables
+ * referenced by its format changes, or when its visibility or format changes.
+ *
+ * Each section also has a refresh interval in ticks. Changes to its inputs
+ * within the interval after it was last rendered are deferred until the
+ * interval has elapsed, and the previously rendered text is shown meanwhile.
+ *
+ * Sections whose text is commonly shared between players can be memoized in
+ * the plugin's {@link SectionMemo}, keyed by the section format and an
+ * encoding of the inputs that the format displays.
+ *
+ * When hud.update.zero-allocation is enabled, sections that are neither
+ * memoized nor computed elsewhere are expanded into a buffer owned by the
+ * section and reused from frame to frame, and are appended to the HUD text
+ * from that buffer without creating a String.
+ *
+ * Sections that are costly to capture, such as those reading chunk data, can
+ * be marked as such, and are hidden while the {@link HudGovernor} sheds load.
+ *
+ * HudSections are only accessed by the thread rendering the player's HUD.
+ */
+class HudSection implements Supplier<String>, TextAppender {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor for a section rendered by expanding a format.
+     *
+     * @param visible the visibility setting of the section.
+     * @param ticks the refresh interval setting of the section.
+     * @param format the format of the section.
+     * @param scope the Scope in which the format is expanded.
+     * @param dependencies the HudSnapshot input masks of the Scope's
+     *        variables, indexed by slot.
+     */
+    HudSection(PlayerSetting<Boolean> visible, PlayerSetting<Integer> ticks,
+               FormatSetting format, Scope scope, int[] dependencies) {
+        _visible = visible;
+        _ticks = ticks;
+        _format = format;
+        _scope = scope;
+        _slotDependencies = dependencies;
+        _renderer = null;
+        _fixedDependencies = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor for a section whose text is computed elsewhere.
+     *
+     * @param visible the visibility setting of the section.
+     * @param ticks the refresh interval setting of the section.
+     * @param renderer computes the text of the section when visible.
+     * @param dependencies the HudSnapshot input masks of the text.
+     */
+    HudSection(PlayerSetting<Boolean> visible, PlayerSetting<Integer> ticks,
+               Supplier<String> renderer, int dependencies) {
+        _visible = visible;
+        _ticks = ticks;
+        _format = null;
+        _scope = null;
+        _slotDependencies = null;
+        _renderer = renderer;
+        _fixedDependencies = dependencies;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Memoize the text of this section in the plugin's {@link SectionMemo}.
+     *
+     * @param section the slot of this section in the HUD schema.
+     * @param key computes the memo key encoding the section's inputs, given
+     *        the bit mask of the Scope slots referenced by the section format.
+     */
+    void setMemo(int section, LongUnaryOperator key) {
+        _memoSection = section;
+        _memoKey = key;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Mark this section as costly to capture, so that it is hidden while the
+     * {@link HudGovernor} hides costly sections.
+     */
+    void setCostly() {
+        _costly = true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if this section is visible: its visibility setting is on,
+     * and it is not a costly section hidden by the {@link HudGovernor}.
+     *
+     * @return true if this section is visible.
+     */
+    boolean isVisible() {
+        return _visible.get() &&
+               !(_costly && NerdPoints.PLUGIN.getHudGovernor().isHidingCostlySections());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Start a new frame, discarding the text rendered previously if it may
+     * have changed and the refresh interval has elapsed.
+     *
+     * Changes to visibility (including costly sections hidden by the
+     * {@link HudGovernor}) or format take effect immediately.
+     *
+     * @param changed the HudSnapshot input masks of the inputs that changed
+     *        since the previous frame.
+     * @param tick the tick in which the frame's snapshot was captured.
+     * @return true if the section must be re-rendered.
+     */
+    boolean update(int changed, long tick) {
+        boolean visible = isVisible();
+        Format format = (_format != null) ? _format.get() : null;
+        if (visible != _lastVisible || format != _lastFormat) {
+            _lastVisible = visible;
+            _lastFormat = format;
+            _dependencies = !visible ? 0 : (format != null) ? getDependencies(format) : _fixedDependencies;
+            _deferred = 0;
+            _rendered = false;
+        } else {
+            _deferred |= (changed & _dependencies);
+        }
+
+        if (_deferred != 0 && tick - _refreshTick >= _ticks.get()) {
+            _deferred = 0;
+            _rendered = false;
+        }
+        if (!_rendered) {
+            _refreshTick = tick;
+        }
+        return !_rendered;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if changes to the inputs of this section have been deferred
+     * until its refresh interval elapses.
+     *
+     * @return true if changes have been deferred.
+     */
+    boolean isDeferred() {
+        return _deferred != 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the text of this section, rendering it if it has not been
+     * rendered since its inputs last changed.
+     *
+     * @see java.util.function.Supplier#get()
+     */
+    @Override
+    public String get() {
+        if (!_rendered) {
+            render();
+        }
+        if (_buffered) {
+            _text = _buffer.toString();
+            _buffered = false;
+        }
+        return _text;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append the text of this section, rendering it if it has not been
+     * rendered since its inputs last changed.
+     *
+     * @see nu.nerd.nerdpoints.format.TextAppender#appendTo(java.lang.StringBuilder)
+     */
+    @Override
+    public void appendTo(StringBuilder builder) {
+        if (!_rendered) {
+            render();
+        }
+        if (_buffered) {
+            builder.append(_buffer);
+        } else {
+            builder.append(_text);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Render the text of this section into _text, or into _buffer if
+     * hud.update.zero-allocation is enabled and the section is expanded from
+     * a format that is not memoized.
+     */
+    protected void render() {
+        _buffered = false;
+        if (!_lastVisible) {
+            _text = "";
+        } else if (_lastFormat != null) {
+            if (_memoKey != null && NerdPoints.CONFIG.HUD_UPDATE_SECTION_MEMO_SIZE > 0) {
+                SectionMemo memo = NerdPoints.PLUGIN.getSectionMemo();
+                long key = _memoKey.applyAsLong(_slots);
+                _text = memo.get(_memoSection, _lastFormat, key);
+                if (_text == null) {
+                    _text = _lastFormat.expand(_scope);
+                    memo.put(_memoSection, _lastFormat, key, _text);
+                }
+            } else if (NerdPoints.CONFIG.HUD_UPDATE_ZERO_ALLOCATION) {
+                if (_buffer == null) {
+                    _buffer = new StringBuilder();
+                }
+                _buffer.setLength(0);
+                _lastFormat.expand(_scope, _buffer);
+                _buffered = true;
+            } else {
+                _text = _lastFormat.expand(_scope);
+            }
+        } else {
+            _text = _renderer.get();
+        }
+        // Not until rendering succeeds, so that a failure is retried.
+        _rendered = true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the union of the input masks of the variables referenced by the
+     * specified format, and record the slots of those variables in _slots.
+     *
+     * @param format the format.
+     * @return the input masks.
+     */
+    protected int getDependencies(Format format) {
+        ScopeSchema schema = _scope.getSchema();
+        int dependencies = 0;
+        _slots = 0;
+        for (String name : format.getVariables()) {
+            int slot = schema.getSlot(name);
+            if (slot >= 0) {
+                dependencies |= _slotDependencies[slot];
+                _slots |= 1L << slot;
+            }
+        }
+        return dependencies;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The visibility setting of the section.
+     */
+    protected final PlayerSetting<Boolean> _visible;
+
+    /**
+     * The refresh interval setting of the section.
+     */
+    protected final PlayerSetting<Integer> _ticks;
+
+    /**
+     * The format of the section, or null if it is computed by _renderer.
+     */
+    protected final FormatSetting _format;
+
+    /**
+     * The Scope in which the format is expanded.
+     */
+    protected final Scope _scope;
+
+    /**
+     * The input masks of the Scope's variables, indexed by slot.
+     */
+    protected final int[] _slotDependencies;
+
+    /**
+     * Computes the text of the section, if it has no format.
+     */
+    protected final Supplier<String> _renderer;
+
+    /**
+     * The input masks of the text computed by _renderer.
+     */
+    protected final int _fixedDependencies;
+
+    /**
+     * True if the section is costly to capture.
+     */
+    protected boolean _costly;
+
+    /**
+     * The visibility of the section when last updated.
+     */
+    protected boolean _lastVisible;
+
+    /**
+     * The format of the section when last updated.
+     */
+    protected Format _lastFormat;
+
+    /**
+     * The input masks of the variables the section currently displays.
+     */
+    protected int _dependencies;
+
+    /**
+     * Bit mask of the Scope slots referenced by the section format.
+     */
+    protected long _slots;
+
+    /**
+     * The slot of this section in the HUD schema, for memo statistics.
+     */
+    protected int _memoSection;
+
+    /**
+     * Computes the memo key of the section, or null if not memoized.
+     */
+    protected LongUnaryOperator _memoKey;
+
+    /**
+     * The input masks of the changes deferred until the refresh interval
+     * elapses.
+     */
+    protected int _deferred;
+
+    /**
+     * The tick of the snapshot from which the text was last rendered.
+     */
+    protected long _refreshTick;
+
+    /**
+     * True if the text has been rendered since the inputs last changed.
+     */
+    protected boolean _rendered;
+
+    /**
+     * True if the rendered text is in _buffer rather than _text.
+     */
+    protected boolean _buffered;
+
+    /**
+     * The rendered text, if not buffered.
+     */
+    protected String _text;
+
+    /**
+     * The reusable buffer into which the text is rendered when
+     * hud.update.zero-allocation is enabled; created on first use.
+     */
+    protected StringBuilder _buffer;
+} // class HudSection
@@ -0,0 +1,172 @@
+package nu.nerd.nerdpoints;
+
+import java.util.Objects;
+
+import org.bukkit.block.Biome;
+
+// ----------------------------------------------------------------------------
+/**
+ * The state of a player captured on the main thread, from which their HUD is
+ * rendered asynchronously.
+ *
+ * A snapshot contains only primitives and immutable values, so that rendering
+ * never touches Bukkit objects off the main thread.
+ *
+ * Each player has a small, fixed set of HudSnapshot instances that are reused.
+ * A snapshot is filled in by the main thread and then handed off to a worker
+ * thread; after the hand-off, it is not modified until the worker is done with
+ * it.
+ *
+ * The inputs that HUD variables depend upon are identified by the bit masks
+ * defined here, so that the renderer can compare consecutive snapshots and
+ * only re-render the sections whose inputs changed.
+ */
+class HudSnapshot {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the set of inputs that differ between this snapshot and another.
+     *
+     * @param other the other snapshot.
+     * @return the bitwise OR of the masks of the inputs that differ.
+     */
+    int diff(HudSnapshot other) {
+        int changed = 0;
+        if (blockX != other.blockX || blockY != other.blockY || blockZ != other.blockZ) {
+            changed |= BLOCK;
+            if ((blockX >> 4) != (other.blockX >> 4) ||
+                (blockY >> 4) != (other.blockY >> 4) ||
+                (blockZ >> 4) != (other.blockZ >> 4)) {
+                changed |= CHUNK;
+            }
+        }
+        if (x != other.x || y != other.y || z != other.z) {
+            changed |= FINE;
+        }
+        if (yaw != other.yaw) {
+            changed |= YAW;
+        }
+        if (!Objects.equals(timeText, other.timeText)) {
+            changed |= TIME;
+        }
+        if (biome != other.biome) {
+            changed |= BIOME;
+        }
+        if (skyLight != other.skyLight || blockLight != other.blockLight) {
+            changed |= LIGHT;
+        }
+        return changed;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Copy the contents of another snapshot into this one.
+     *
+     * @param other the other snapshot.
+     */
+    void copyFrom(HudSnapshot other) {
+        x = other.x;
+        y = other.y;
+        z = other.z;
+        yaw = other.yaw;
+        blockX = other.blockX;
+        blockY = other.blockY;
+        blockZ = other.blockZ;
+        biome = other.biome;
+        skyLight = other.skyLight;
+        blockLight = other.blockLight;
+        timeText = other.timeText;
+        tick = other.tick;
+        generation = other.generation;
+        captureNanos = other.captureNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Input masks: the block coordinates.
+     */
+    static final int BLOCK = 1;
+
+    /**
+     * Input masks: the exact coordinates.
+     */
+    static final int FINE = 1 << 1;
+
+    /**
+     * Input masks: the yaw.
+     */
+    static final int YAW = 1 << 2;
+
+    /**
+     * Input masks: the time section text, which changes when the world time
+     * moves into a new displayed minute, or the weather changes.
+     */
+    static final int TIME = 1 << 3;
+
+    /**
+     * Input masks: the biome.
+     */
+    static final int BIOME = 1 << 4;
+
+    /**
+     * Input masks: the light levels.
+     */
+    static final int LIGHT = 1 << 5;
+
+    /**
+     * Input masks: the chunk coordinates.
+     */
+    static final int CHUNK = 1 << 6;
+
+    /**
+     * Input masks: all inputs.
+     */
+    static final int ALL = BLOCK | FINE | YAW | TIME | BIOME | LIGHT | CHUNK;
+
+    /**
+     * The player's coordinates.
+     */
+    double x, y, z;
+
+    /**
+     * The player's yaw.
+     */
+    float yaw;
+
+    /**
+     * The coordinates of the block at the player's location.
+     */
+    int blockX, blockY, blockZ;
+
+    /**
+     * The biome at the player's location, or null if not displayed.
+     */
+    Biome biome;
+
+    /**
+     * The sky light and block light levels at the player's location, or 0 if
+     * not displayed.
+     */
+    int skyLight, blockLight;
+
+    /**
+     * The time section of the HUD, rendered for the player's world, or null if
+     * not displayed.
+     */
+    String timeText;
+
+    /**
+     * The HUD scheduler tick in which the snapshot was captured.
+     */
+    long tick;
+
+    /**
+     * The sequence number of the snapshot among those handed off for the
+     * player, starting at 1.
+     */
+    long generation;
+
+    /**
+     * The System.nanoTime() at which the snapshot was captured.
+     */
+    long captureNanos;
+} // class HudSnapshot
@@ -0,0 +1,98 @@
+package nu.nerd.nerdpoints;
+
+import java.util.ArrayList;
+
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+
+// ----------------------------------------------------------------------------
+/**
+ * Conversion of text containing '§'-prefixed colour codes into chat
+ * components.
+ *
+ * This is a single pass replacement for TextComponent.fromLegacyText() that
+ * produces equivalently styled components, without the regular expression
+ * used there to detect URLs, which are never clickable on the action bar.
+ */
+public class LegacyText {
+    // ------------------------------------------------------------------------
+    /**
+     * Convert text with '§'-prefixed colour codes into chat components.
+     *
+     * As in TextComponent.fromLegacyText(), each colour code starts a new
+     * component with no formatting; formatting codes add to the current style
+     * and the reset code is treated as white.
+     *
+     * @param text the text.
+     * @return the components; there is always at least one.
+     */
+    public static BaseComponent[] toComponents(String text) {
+        ArrayList<BaseComponent> components = new ArrayList<>();
+        StringBuilder run = new StringBuilder(text.length());
+        TextComponent style = new TextComponent();
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c != ChatColor.COLOR_CHAR) {
+                run.append(c);
+                continue;
+            }
+
+            // Like fromLegacyText(), drop a trailing '§', and '§' followed by
+            // an invalid code along with the code character.
+            if (++i >= text.length()) {
+                break;
+            }
+            ChatColor code = ChatColor.getByChar(Character.toLowerCase(text.charAt(i)));
+            if (code == null) {
+                continue;
+            }
+            if (run.length() > 0) {
+                components.add(makeComponent(style, run));
+            }
+
+            switch (code) {
+            case BOLD:
+                style.setBold(true);
+                break;
+            case ITALIC:
+                style.setItalic(true);
+                break;
+            case UNDERLINE:
+                style.setUnderlined(true);
+                break;
+            case STRIKETHROUGH:
+                style.setStrikethrough(true);
+                break;
+            case MAGIC:
+                style.setObfuscated(true);
+                break;
+            default:
+                style = new TextComponent();
+                style.setColor(code == ChatColor.RESET ? ChatColor.WHITE : code);
+                break;
+            }
+        }
+
+        if (run.length() > 0 || components.isEmpty()) {
+            components.add(makeComponent(style, run));
+        }
+        return components.toArray(new BaseComponent[components.size()]);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a new component with the specified style and the text
+     * accumulated in a StringBuilder, and clear the StringBuilder.
+     *
+     * @param style a component whose style is copied.
+     * @param run the text of the new component.
+     * @return the new component.
+     */
+    private static TextComponent makeComponent(TextComponent style, StringBuilder run) {
+        TextComponent component = new TextComponent(style);
+        component.setText(run.toString());
+        run.setLength(0);
+        return component;
+    }
+} // class LegacyText
@@ -2,14 +2,17 @@ package nu.nerd.nerdpoints;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.PluginCommand;
@@ -17,12 +20,33 @@ import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 import nu.nerd.nerdpoints.commands.ExecutorBase;
 import nu.nerd.nerdpoints.commands.HudExecutor;
@@ -43,6 +67,27 @@ public class NerdPoints extends JavaPlugin implements Listener {
      */
     public static Configuration CONFIG = new Configuration();
 
+    // ------------------------------------------------------------------------
+    /**
+     * Default constructor, used when the server loads the plugin.
+     */
+    public NerdPoints() {
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor for use outside of a running server, e.g. by benchmarks.
+     * 
+     * @param loader the plugin loader.
+     * @param description the plugin description.
+     * @param dataFolder the directory containing configuration and player
+     *        settings.
+     * @param file the plugin's JAR file.
+     */
+    protected NerdPoints(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Suspend the HUD display (uses the action bar) of the specified player for
@@ -68,6 +113,177 @@ public class NerdPoints extends JavaPlugin implements Listener {
         return _state.get(player.getName());
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the cache of chat components sent to display HUD text.
+     * 
+     * @return the cache of chat components sent to display HUD text.
+     */
+    public ComponentCache getComponentCache() {
+        return _componentCache;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the memo table of rendered HUD section text.
+     * 
+     * @return the {@link SectionMemo}.
+     */
+    public SectionMemo getSectionMemo() {
+        return _sectionMemo;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Executor that renders and sends HUDs off the main thread.
+     * 
+     * @return the {@link RenderPool}.
+     */
+    public RenderPool getRenderPool() {
+        return _actionBarPool;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the planner that chooses between inline and parallel rendering.
+     * 
+     * @return the {@link RenderPlanner}.
+     */
+    public RenderPlanner getRenderPlanner() {
+        return _renderPlanner;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the per-tick counts of skipped and late HUD frames.
+     * 
+     * @return the {@link FrameStats}.
+     */
+    public FrameStats getFrameStats() {
+        return _frameStats;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the governor that lowers HUD fidelity as MSPT rises.
+     * 
+     * @return the {@link HudGovernor}.
+     */
+    public HudGovernor getHudGovernor() {
+        return _hudGovernor;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the {@link WorldEnvironment} of the specified world, captured in
+     * the current tick.
+     * 
+     * This must be called from the main thread.
+     * 
+     * @param world the world.
+     * @return the {@link WorldEnvironment}.
+     */
+    public WorldEnvironment getWorldEnvironment(World world) {
+        WorldEnvironment environment = _worldEnvironments.get(world);
+        if (environment == null) {
+            environment = new WorldEnvironment(world);
+            _worldEnvironments.put(world, environment);
+        }
+        environment.update(_hudScheduler.getTicks());
+        return environment;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of ticks that the HUD update task has run.
+     * 
+     * @return the number of ticks that the HUD update task has run.
+     */
+    public long getHudTicks() {
+        return _hudScheduler.getTicks();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the scheduler that spreads HUD updates across the HUD update
+     * period.
+     * 
+     * @return the {@link HudScheduler}.
+     */
+    public HudScheduler getHudScheduler() {
+        return _hudScheduler;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the {@link WorldEnvironment}s of all worlds that have HUD users.
+     * 
+     * @return the {@link WorldEnvironment}s.
+     */
+    public Collection<WorldEnvironment> getWorldEnvironments() {
+        return _worldEnvironments.values();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reload the configuration and apply it to HUD update machinery.
+     */
+    public void reloadConfiguration() {
+        CONFIG.reload(true);
+        _componentCache.setCapacity(CONFIG.HUD_UPDATE_COMPONENT_CACHE_SIZE);
+        _sectionMemo.setCapacity(CONFIG.HUD_UPDATE_SECTION_MEMO_SIZE);
+        if (!_actionBarPool.isConfiguredAs(CONFIG.HUD_UPDATE_EXECUTOR, CONFIG.HUD_UPDATE_THREADS)) {
+            // Work already submitted to the old pool finishes there. Each
+            // player's HUD is rendered by at most one thread at a time, so
+            // the two pools never render the same HUD concurrently.
+            RenderPool oldPool = _actionBarPool;
+            _actionBarPool = RenderPool.create(CONFIG.HUD_UPDATE_EXECUTOR, CONFIG.HUD_UPDATE_THREADS);
+            oldPool.shutdown();
+            getLogger().info("HUD executor: " + _actionBarPool);
+        }
+        _hudScheduler.setPeriod(getHudPeriod());
+        for (PlayerState state : _state.values()) {
+            state.invalidateHUD();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the HUD update period in ticks: hud.update.ticks, lengthened by
+     * the {@link HudGovernor} when the server is overloaded.
+     * 
+     * @return the HUD update period in ticks.
+     */
+    protected int getHudPeriod() {
+        int period = Math.max(1, CONFIG.HUD_UPDATE_TICKS);
+        if (_hudGovernor != null && _hudGovernor.isLongerIntervals()) {
+            period *= Math.max(1, CONFIG.HUD_GOVERNOR_INTERVAL_MULTIPLIER);
+        }
+        return period;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Apply a change of {@link HudGovernor} stage.
+     * 
+     * The HUD update period is set according to the new stage. When costly
+     * sections are hidden or shown again, all HUDs are invalidated so that
+     * their inputs are re-examined.
+     * 
+     * This must be called from the main thread.
+     * 
+     * @param oldStage the previous stage.
+     * @param newStage the new stage.
+     */
+    protected void applyHudGovernorStage(int oldStage, int newStage) {
+        _hudScheduler.setPeriod(getHudPeriod());
+        if ((oldStage >= HudGovernor.STAGE_NO_COSTLY_SECTIONS) != (newStage >= HudGovernor.STAGE_NO_COSTLY_SECTIONS)) {
+            for (PlayerState state : _state.values()) {
+                state.invalidateHUD();
+            }
+        }
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Return the path to the directory containing player settings files.
@@ -100,13 +316,17 @@ public class NerdPoints extends JavaPlugin implements Listener {
     @Override
     public void onEnable() {
         PLUGIN = this;
-        _actionBarPool = new ForkJoinPool();
 
         saveDefaultConfig();
         CONFIG.reload(false);
+        _actionBarPool = RenderPool.create(CONFIG.HUD_UPDATE_EXECUTOR, CONFIG.HUD_UPDATE_THREADS);
+        _componentCache = new ComponentCache(CONFIG.HUD_UPDATE_COMPONENT_CACHE_SIZE);
+        _sectionMemo = new SectionMemo(CONFIG.HUD_UPDATE_SECTION_MEMO_SIZE);
+        _hudScheduler = new HudScheduler(this, CONFIG.HUD_UPDATE_TICKS);
+        _hudGovernor = new HudGovernor();
         migratePlayerSettings();
 
-        Bukkit.getScheduler().scheduleSyncDelayedTask(this, () -> updateActionBars(), CONFIG.HUD_UPDATE_TICKS);
+        Bukkit.getScheduler().runTaskTimer(this, _hudScheduler, 1, 1);
         Bukkit.getPluginManager().registerEvents(this, this);
 
         addCommandExecutor(new HudExecutor());
@@ -165,7 +385,9 @@ public class NerdPoints extends JavaPlugin implements Listener {
     @EventHandler(ignoreCancelled = true)
     protected void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        _state.put(player.getName(), new PlayerState(player));
+        PlayerState state = new PlayerState(player);
+        _state.put(player.getName(), state);
+        _hudScheduler.add(state);
     }
 
     // ------------------------------------------------------------------------
@@ -175,33 +397,289 @@ public class NerdPoints extends JavaPlugin implements Listener {
     @EventHandler(ignoreCancelled = true)
     protected void onPlayerQuit(PlayerQuitEvent event) {
         PlayerState state = _state.remove(event.getPlayer().getName());
+        _hudScheduler.remove(state);
         state.save();
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Update the action bar displays of all players.
+     * On world unload, forget the {@link WorldEnvironment}.
+     */
+    @EventHandler
+    protected void onWorldUnload(WorldUnloadEvent event) {
+        _worldEnvironments.remove(event.getWorld());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * On chunk load, discard any out of date snapshot of the chunk.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    protected void onChunkLoad(ChunkLoadEvent event) {
+        evictChunkSample(event.getChunk());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * On chunk unload, discard the snapshot of the chunk.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    protected void onChunkUnload(ChunkUnloadEvent event) {
+        evictChunkSample(event.getChunk());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around placed blocks.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockPlace(BlockPlaceEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around broken blocks.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockBreak(BlockBreakEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around burnt blocks.
      */
-    protected void updateActionBars() {
-        Bukkit.getScheduler().scheduleSyncDelayedTask(this, () -> updateActionBars(), CONFIG.HUD_UPDATE_TICKS);
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockBurn(BlockBurnEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks that fade, e.g. melting
+     * ice.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockFade(BlockFadeEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks that form, e.g. snow.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockForm(BlockFormEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks that spread, e.g. fire.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockSpread(BlockSpreadEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around decaying leaves.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onLeavesDecay(LeavesDecayEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks moved by a piston.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockPistonExtend(BlockPistonExtendEvent event) {
+        invalidateBlockSample(event.getBlock());
+        for (Block block : event.getBlocks()) {
+            invalidateBlockSample(block);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks moved by a piston.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockPistonRetract(BlockPistonRetractEvent event) {
+        invalidateBlockSample(event.getBlock());
+        for (Block block : event.getBlocks()) {
+            invalidateBlockSample(block);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks destroyed by an
+     * exploding block.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockExplode(BlockExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            invalidateBlockSample(block);
+        }
+    }
 
-        for (Player player : Bukkit.getServer().getOnlinePlayers()) {
-            PlayerState state = getState(player);
-            state.syncPrepareHUDUpdate();
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks destroyed by an
+     * exploding entity.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onEntityExplode(EntityExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            invalidateBlockSample(block);
         }
+    }
 
-        if (CONFIG.HUD_UPDATE_PARALLEL) {
-            for (Player player : Bukkit.getServer().getOnlinePlayers()) {
-                PlayerState state = getState(player);
-                _actionBarPool.submit(() -> state.asyncUpdateHUD());
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around flowing water and lava.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockFromTo(BlockFromToEvent event) {
+        invalidateBlockSample(event.getToBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around redstone components that switch
+     * on or off, e.g. lamps and torches.
+     *
+     * Changes in signal strength that leave the component powered, or
+     * unpowered, don't affect light levels and are ignored.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    protected void onBlockRedstone(BlockRedstoneEvent event) {
+        if ((event.getOldCurrent() == 0) != (event.getNewCurrent() == 0)) {
+            invalidateBlockSample(event.getBlock());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around grown trees and mushrooms.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onStructureGrow(StructureGrowEvent event) {
+        for (BlockState state : event.getBlocks()) {
+            invalidateBlockSample(state.getBlock());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate sampled light levels around blocks changed by entities, e.g.
+     * endermen and falling blocks.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        invalidateBlockSample(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Mark stale the chunk snapshots whose light levels could be affected by
+     * a change to the specified block.
+     * 
+     * @param block the block.
+     */
+    protected void invalidateBlockSample(Block block) {
+        WorldEnvironment environment = _worldEnvironments.get(block.getWorld());
+        if (environment != null) {
+            environment.getChunkSampler().invalidateBlock(block.getX(), block.getZ());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the snapshot of the specified chunk.
+     * 
+     * @param chunk the chunk.
+     */
+    protected void evictChunkSample(Chunk chunk) {
+        WorldEnvironment environment = _worldEnvironments.get(chunk.getWorld());
+        if (environment != null) {
+            environment.getChunkSampler().evictChunk(chunk.getX(), chunk.getZ());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Update the action bar displays of the specified players.
+     * 
+     * This is called by the {@link HudScheduler} every tick, with the players
+     * whose HUDs are due for update on that tick.
+     * 
+     * The main thread only captures a snapshot of each player's state; the HUD
+     * is rendered and sent by _actionBarPool, or inline if updates are not
+     * parallel. The main thread never waits for HUD work to finish.
+     * 
+     * Players whose HUDs need rendering are collected into an array. The
+     * {@link RenderPlanner} then decides whether to render them inline or
+     * hand them to _actionBarPool in a few batches, rather than submitting
+     * one task each.
+     * 
+     * A player whose previous frame is still in flight is skipped this tick,
+     * as are all players if hud.update.max-pending-ticks ticks' worth of HUD
+     * work is already queued or in progress, so that the queue stays bounded
+     * when rendering falls behind. Their changes are picked up on their next
+     * update.
+     * 
+     * @param states the states of the players to update.
+     */
+    protected void updateActionBars(List<PlayerState> states) {
+        _hudGovernor.sample();
+        _frameStats.startTick();
+        if (CONFIG.HUD_UPDATE_PARALLEL &&
+            _actionBarPool.getPendingRenders() >= CONFIG.HUD_UPDATE_MAX_PENDING_TICKS) {
+            for (int i = 0; i < states.size(); ++i) {
+                if (states.get(i).isShowingHUD()) {
+                    _frameStats.skip();
+                }
             }
-            _actionBarPool.awaitQuiescence(CONFIG.HUD_UPDATE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        } else {
-            // Synchronous to main thread.
-            for (Player player : Bukkit.getServer().getOnlinePlayers()) {
-                getState(player).asyncUpdateHUD();
+            return;
+        }
+
+        // A new array each tick, since batches may still be running when the
+        // next tick's array is filled.
+        PlayerState[] batch = null;
+        int count = 0;
+        for (int i = 0; i < states.size(); ++i) {
+            PlayerState state = states.get(i);
+            if (state.isHUDUpdateInFlight()) {
+                _frameStats.skip();
+                continue;
+            }
+            if (state.syncPrepareHUDUpdate() && state.claimHUDUpdate()) {
+                if (batch == null) {
+                    batch = new PlayerState[states.size() - i];
+                }
+                batch[count++] = state;
             }
         }
+        if (count == 0) {
+            return;
+        }
+
+        int batches = _renderPlanner.plan(count, _actionBarPool);
+        long start = System.nanoTime();
+        if (batches == 0) {
+            // Synchronous to main thread.
+            RenderBatch.render(null, batch, 0, count);
+            _renderPlanner.recordInline(count, System.nanoTime() - start);
+        } else {
+            _actionBarPool.render(batch, count, batches);
+            _renderPlanner.recordSubmit(System.nanoTime() - start);
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -268,8 +746,44 @@ public class NerdPoints extends JavaPlugin implements Listener {
     protected HashMap<String, PlayerState> _state = new HashMap<>();
 
     /**
-     * ForkJoinPool used to compute the formatted text of player HUDS in
-     * parallel.
+     * Executor used to compute the formatted text of player HUDS in parallel;
+     * replaced when the configured backend changes.
+     */
+    protected RenderPool _actionBarPool;
+
+    /**
+     * Chooses between inline and parallel rendering each tick.
+     */
+    protected RenderPlanner _renderPlanner = new RenderPlanner();
+
+    /**
+     * Per-tick counts of skipped and late HUD frames.
+     */
+    protected final FrameStats _frameStats = new FrameStats();
+
+    /**
+     * Cache of chat components sent to display HUD text, shared by all
+     * players.
+     */
+    protected ComponentCache _componentCache;
+
+    /**
+     * Memo table of rendered HUD section text, shared by all players.
+     */
+    protected SectionMemo _sectionMemo;
+
+    /**
+     * Spreads HUD updates across the HUD update period.
+     */
+    protected HudScheduler _hudScheduler;
+
+    /**
+     * Lowers HUD fidelity as MSPT rises.
+     */
+    protected HudGovernor _hudGovernor;
+
+    /**
+     * Map from World to its {@link WorldEnvironment}.
      */
-    protected ForkJoinPool _actionBarPool;
+    protected HashMap<World, WorldEnvironment> _worldEnvironments = new HashMap<>();
 } // class NerdPoints
\ No newline at end of file
@@ -3,19 +3,27 @@ package nu.nerd.nerdpoints;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.bukkit.ChatColor;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Biome;
-import org.bukkit.block.Block;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
 import net.md_5.bungee.api.ChatMessageType;
-import net.md_5.bungee.api.chat.TextComponent;
-import nu.nerd.nerdpoints.format.Fixed1;
+import net.md_5.bungee.api.chat.BaseComponent;
+import nu.nerd.nerdpoints.format.FixedTextSupplier;
+import nu.nerd.nerdpoints.format.Format;
+import nu.nerd.nerdpoints.format.IntTextSupplier;
+import nu.nerd.nerdpoints.format.NumberText;
 import nu.nerd.nerdpoints.format.Scope;
+import nu.nerd.nerdpoints.format.ScopeSchema;
 import nu.nerd.nerdpoints.format.TextSupplier;
 
 // ----------------------------------------------------------------------------
@@ -64,6 +72,36 @@ public class PlayerState {
      */
     public final PlayerSetting<Boolean> timeVisible;
 
+    /**
+     * The refresh interval of the biome section of the HUD, in ticks.
+     */
+    public final PlayerSetting<Integer> biomeTicks;
+
+    /**
+     * The refresh interval of the chunk section of the HUD, in ticks.
+     */
+    public final PlayerSetting<Integer> chunkTicks;
+
+    /**
+     * The refresh interval of the compass section of the HUD, in ticks.
+     */
+    public final PlayerSetting<Integer> compassTicks;
+
+    /**
+     * The refresh interval of the coords section of the HUD, in ticks.
+     */
+    public final PlayerSetting<Integer> coordsTicks;
+
+    /**
+     * The refresh interval of the light section of the HUD, in ticks.
+     */
+    public final PlayerSetting<Integer> lightTicks;
+
+    /**
+     * The refresh interval of the time section of the HUD, in ticks.
+     */
+    public final PlayerSetting<Integer> timeTicks;
+
     /**
      * The format string used by this player to lay out their HUD.
      */
@@ -122,6 +160,13 @@ public class PlayerState {
         _settings.add(lightVisible = new PlayerSetting<>("light-visible", () -> NerdPoints.CONFIG.HUD_DEFAULT_LIGHT_VISIBLE));
         _settings.add(timeVisible = new PlayerSetting<>("time-visible", () -> NerdPoints.CONFIG.HUD_DEFAULT_TIME_VISIBLE));
 
+        _settings.add(biomeTicks = new PlayerSetting<>("biome-ticks", () -> NerdPoints.CONFIG.HUD_UPDATE_SECTIONS_BIOME_TICKS));
+        _settings.add(chunkTicks = new PlayerSetting<>("chunk-ticks", () -> NerdPoints.CONFIG.HUD_UPDATE_SECTIONS_CHUNK_TICKS));
+        _settings.add(compassTicks = new PlayerSetting<>("compass-ticks", () -> NerdPoints.CONFIG.HUD_UPDATE_SECTIONS_COMPASS_TICKS));
+        _settings.add(coordsTicks = new PlayerSetting<>("coords-ticks", () -> NerdPoints.CONFIG.HUD_UPDATE_SECTIONS_COORDS_TICKS));
+        _settings.add(lightTicks = new PlayerSetting<>("light-ticks", () -> NerdPoints.CONFIG.HUD_UPDATE_SECTIONS_LIGHT_TICKS));
+        _settings.add(timeTicks = new PlayerSetting<>("time-ticks", () -> NerdPoints.CONFIG.HUD_UPDATE_SECTIONS_TIME_TICKS));
+
         _settings.add(hudFormat = new FormatSetting("hud-format", () -> NerdPoints.CONFIG.HUD_DEFAULT_HUD_FORMAT));
         _settings.add(biomeFormat = new FormatSetting("biome-format", () -> NerdPoints.CONFIG.HUD_DEFAULT_BIOME_FORMAT));
         _settings.add(chunkFormat = new FormatSetting("chunk-format", () -> NerdPoints.CONFIG.HUD_DEFAULT_CHUNK_FORMAT));
@@ -135,7 +180,11 @@ public class PlayerState {
         // Set up the biome Scope.
         _biomeScope.set("biome",
                         new TextSupplier<Biome>(
-                            () -> _block.getBiome(), b -> {
+                            () -> _snapshot.biome, b -> {
+                                // Not captured when the biome was hidden.
+                                if (b == null) {
+                                    return "";
+                                }
                                 String biome = NerdPoints.CONFIG.HUD_BIOME_NAMES.get(b);
                                 if (biome == null) {
                                     biome = b.name().toLowerCase().replace('_', ' ');
@@ -144,106 +193,154 @@ public class PlayerState {
                             }));
 
         // Set up the chunk Scope.
-        _chunkScope.set("cx", new TextSupplier<Integer>(() -> _block.getX() >> 4, i -> Integer.toString(i)));
-        _chunkScope.set("cy", new TextSupplier<Integer>(() -> _block.getY() >> 4, i -> Integer.toString(i)));
-        _chunkScope.set("cz", new TextSupplier<Integer>(() -> _block.getZ() >> 4, i -> Integer.toString(i)));
-        _chunkScope.set("x", new TextSupplier<Integer>(() -> _block.getX() & 0xF, i -> Integer.toString(i)));
-        _chunkScope.set("y", new TextSupplier<Integer>(() -> _block.getY() & 0xF, i -> Integer.toString(i)));
-        _chunkScope.set("z", new TextSupplier<Integer>(() -> _block.getZ() & 0xF, i -> Integer.toString(i)));
+        _chunkScope.set("cx", new IntTextSupplier(() -> _snapshot.blockX >> 4));
+        _chunkScope.set("cy", new IntTextSupplier(() -> _snapshot.blockY >> 4));
+        _chunkScope.set("cz", new IntTextSupplier(() -> _snapshot.blockZ >> 4));
+        _chunkScope.set("x", new IntTextSupplier(() -> _snapshot.blockX & 0xF));
+        _chunkScope.set("y", new IntTextSupplier(() -> _snapshot.blockY & 0xF));
+        _chunkScope.set("z", new IntTextSupplier(() -> _snapshot.blockZ & 0xF));
 
         // Set up the compass Scope.
         // Integer octant index => octant string.
         _compassScope.set("octant",
-                          new TextSupplier<Integer>(
-                              () -> (int) ((_location.getYaw() + 360.0f + 22.5f) / 45.0f) & 0x7,
+                          new IntTextSupplier(
+                              () -> getOctant(_snapshot.yaw),
                               i -> OCTANTS[i]));
 
         _compassScope.set("heading",
-                          new TextSupplier<Integer>(
-                              () -> Math.round(_location.getYaw() + 360) % 360,
-                              i -> String.format("%3d", i)));
+                          new IntTextSupplier(
+                              () -> getHeading(_snapshot.yaw),
+                              NumberText::spacePad3));
 
         _compassScope.set("heading.",
-                          // Prevent 359.95 being displayed as "360.0".
                           // Fixed point with one decimal digit.
-                          new TextSupplier<Fixed1>(
-                              () -> new Fixed1(Math.round((_location.getYaw() + 360) * 10) % 3600),
-                              f -> f.toString(5)));
+                          new IntTextSupplier(
+                              () -> getHeadingTenths(_snapshot.yaw),
+                              NumberText::heading1));
 
         // Set up the coords Scope.
-        _coordsScope.set("x", new TextSupplier<Integer>(() -> _location.getBlockX(), i -> Integer.toString(i)));
-        _coordsScope.set("y", new TextSupplier<Integer>(() -> _location.getBlockY(), i -> Integer.toString(i)));
-        _coordsScope.set("z", new TextSupplier<Integer>(() -> _location.getBlockZ(), i -> Integer.toString(i)));
-        _coordsScope.set("x.", new TextSupplier<Fixed1>(() -> new Fixed1((float) _location.getX()), f -> f.toString()));
-        _coordsScope.set("y.", new TextSupplier<Fixed1>(() -> new Fixed1((float) _location.getY()), f -> f.toString()));
-        _coordsScope.set("z.", new TextSupplier<Fixed1>(() -> new Fixed1((float) _location.getZ()), f -> f.toString()));
+        _coordsScope.set("x", new IntTextSupplier(() -> _snapshot.blockX));
+        _coordsScope.set("y", new IntTextSupplier(() -> _snapshot.blockY));
+        _coordsScope.set("z", new IntTextSupplier(() -> _snapshot.blockZ));
+        _coordsScope.set("x.", new FixedTextSupplier(() -> _snapshot.x));
+        _coordsScope.set("y.", new FixedTextSupplier(() -> _snapshot.y));
+        _coordsScope.set("z.", new FixedTextSupplier(() -> _snapshot.z));
 
         // Set up the light Scope.
         _lightScope.set("light",
-                        new TextSupplier<Integer>(
+                        new IntTextSupplier(
                             // Ignore Block.getLightLevel(). Compute per F3.
-                            () -> (_block != null) ? Math.max(_block.getLightFromSky(), _block.getLightFromBlocks()) : 0,
-                            i -> String.format("%2d", i)));
+                            () -> Math.max(_snapshot.skyLight, _snapshot.blockLight),
+                            NumberText::spacePad2));
         _lightScope.set("skylight",
-                        new TextSupplier<Integer>(
-                            () -> (_block != null) ? (int) _block.getLightFromSky() : 0,
-                            i -> String.format("%2d", i)));
+                        new IntTextSupplier(
+                            () -> _snapshot.skyLight,
+                            NumberText::spacePad2));
         _lightScope.set("blocklight",
-                        new TextSupplier<Integer>(
-                            () -> (_block != null) ? (int) _block.getLightFromBlocks() : 0,
-                            i -> String.format("%2d", i)));
-
-        // Set up the time Scope. A Minecraft day is 24000 ticks, an hour 1000.
-        _timeScope.set("ampm",
-                       new TextSupplier<String>(
-                           () -> ((_fullTime + TIME_OFFSET) % 24000 < 12000) ? "a.m." : "p.m.",
-                           s -> s));
-        _timeScope.set("AMPM",
-                       new TextSupplier<String>(
-                           () -> ((_fullTime + TIME_OFFSET) % 24000 < 12000) ? "A.M." : "P.M.",
-                           s -> s));
-        _timeScope.set("h",
-                       new TextSupplier<Long>(
-                           () -> ((_fullTime + TIME_OFFSET) / 1000 + 11) % 12 + 1,
-                           i -> String.format("%2d", i)));
-        _timeScope.set("hh",
-                       new TextSupplier<Long>(
-                           () -> ((_fullTime + TIME_OFFSET) / 1000 + 11) % 12 + 1,
-                           i -> String.format("%02d", i)));
-        _timeScope.set("H",
-                       new TextSupplier<Long>(
-                           () -> ((_fullTime + TIME_OFFSET) / 1000) % 24,
-                           i -> String.format("%2d", i)));
-        _timeScope.set("HH",
-                       new TextSupplier<Long>(
-                           () -> ((_fullTime + TIME_OFFSET) / 1000) % 24,
-                           i -> String.format("%02d", i)));
-        _timeScope.set("mm",
-                       new TextSupplier<Long>(
-                           () -> ((_fullTime + TIME_OFFSET) % 1000) * 60 / 1000 % 60,
-                           i -> String.format("%02d", i)));
-        _timeScope.set("orb",
-                       new TextSupplier<String>(
-                           () -> {
-                               long time = (_fullTime % 24000);
-                               return (time >= TIME_SUNRISE || time < TIME_MOONRISE) ? "☼" : "☾";
-                           },
-                           s -> s));
-        _timeScope.set("updown",
-                       new TextSupplier<String>(
-                           () -> {
-                               long time = (_fullTime % 24000);
-                               if ((time >= TIME_SUNRISE || time < TIME_DAY) ||
-                                   (time >= TIME_MOONRISE && time < TIME_NIGHT)) {
-                                   return "↑";
-                               } else if ((time >= TIME_SUNSET && time < TIME_MOONRISE) ||
-                                          (time >= TIME_MOONSET && time < TIME_SUNRISE)) {
-                                   return "↓";
-                               } else {
-                                   return " ";
-                               }
-                           },
-                           s -> s));
+                        new IntTextSupplier(
+                            () -> _snapshot.blockLight,
+                            NumberText::spacePad2));
+
+        // Set up the HUD Scope. Sections are only rendered if referenced.
+        _hudSections[HUD_BIOME] = new HudSection(biomeVisible, biomeTicks,
+                                                 biomeFormat, _biomeScope, BIOME_DEPENDENCIES);
+        _hudSections[HUD_CHUNK] = new HudSection(chunkVisible, chunkTicks,
+                                                 chunkFormat, _chunkScope, CHUNK_DEPENDENCIES);
+        _hudSections[HUD_COMPASS] = new HudSection(compassVisible, compassTicks,
+                                                   compassFormat, _compassScope, COMPASS_DEPENDENCIES);
+        _hudSections[HUD_COORDS] = new HudSection(coordsVisible, coordsTicks,
+                                                  coordsFormat, _coordsScope, COORDS_DEPENDENCIES);
+        _hudSections[HUD_LIGHT] = new HudSection(lightVisible, lightTicks,
+                                                 lightFormat, _lightScope, LIGHT_DEPENDENCIES);
+        // Not captured when the time was hidden.
+        _hudSections[HUD_TIME] = new HudSection(timeVisible, timeTicks,
+                                                () -> (_snapshot.timeText != null) ? _snapshot.timeText : "",
+                                                HudSnapshot.TIME);
+        // Read from chunk snapshots.
+        _hudSections[HUD_BIOME].setCostly();
+        _hudSections[HUD_LIGHT].setCostly();
+        for (int slot = 0; slot < _hudSections.length; ++slot) {
+            _hudScope.set(slot, _hudSections[slot]);
+        }
+
+        // Sections commonly shared between players are memoized. The time
+        // section is already shared, by WorldEnvironment.
+        _hudSections[HUD_BIOME].setMemo(HUD_BIOME,
+                                        slots -> (_snapshot.biome != null) ? _snapshot.biome.ordinal() : -1);
+        _hudSections[HUD_COMPASS].setMemo(HUD_COMPASS, slots -> getCompassKey(_snapshot.yaw, slots));
+        _hudSections[HUD_LIGHT].setMemo(HUD_LIGHT,
+                                        slots -> (_snapshot.skyLight << 4) | _snapshot.blockLight);
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the compass octant of the specified yaw, as displayed by
+     * %octant%.
+     * 
+     * @param yaw the yaw.
+     * @return the octant index into OCTANTS.
+     */
+    static int getOctant(float yaw) {
+        return (int) ((yaw + 360.0f + 22.5f) / 45.0f) & 0x7;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the compass heading of the specified yaw in whole degrees, as
+     * displayed by %heading%.
+     * 
+     * @param yaw the yaw.
+     * @return the heading, in [0, 360).
+     */
+    static int getHeading(float yaw) {
+        return Math.round(yaw + 360) % 360;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the compass heading of the specified yaw in tenths of a degree,
+     * as displayed by %heading.%.
+     * 
+     * Computed modulo 3600 to prevent 359.95 being displayed as "360.0".
+     * 
+     * @param yaw the yaw.
+     * @return the heading in tenths of a degree, in [0, 3600).
+     */
+    static int getHeadingTenths(float yaw) {
+        return Math.round((yaw + 360) * 10) % 3600;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the memo key of the compass section: the displayed values of the
+     * compass variables referenced by the section format.
+     * 
+     * @param yaw the yaw.
+     * @param slots the bit mask of COMPASS_SCHEMA slots referenced.
+     * @return the memo key.
+     */
+    static long getCompassKey(float yaw, long slots) {
+        long key = 0;
+        if ((slots & (1L << COMPASS_OCTANT)) != 0) {
+            key |= getOctant(yaw);
+        }
+        if ((slots & (1L << COMPASS_HEADING)) != 0) {
+            key |= (long) getHeading(yaw) << 3;
+        }
+        if ((slots & (1L << COMPASS_HEADING_TENTHS)) != 0) {
+            key |= (long) getHeadingTenths(yaw) << 12;
+        }
+        return key;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the player.
+     * 
+     * @return the player.
+     */
+    public Player getPlayer() {
+        return _player;
     }
 
     // --------------------------------------------------------------------------
@@ -283,38 +380,411 @@ public class PlayerState {
 
     // --------------------------------------------------------------------------
     /**
-     * Synchronously to the main thread cache state that can be used to
-     * asynchronously update this player's HUD in {@link #asyncUpdateHUD()}.
+     * Signal that the HUD must be recomputed on its next update, even if the
+     * player's location and the world time have not changed.
+     * 
+     * This must be called, on the main thread, when the player's HUD settings
+     * or the configuration change.
+     */
+    public void invalidateHUD() {
+        _hudInputsKnown = false;
+        _hudInvalid.set(true);
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Synchronously to the main thread, capture a snapshot of the state that
+     * is used to asynchronously update this player's HUD in
+     * {@link #asyncUpdateHUD()}, and hand it off to be rendered.
+     * 
+     * If none of the inputs that the visible HUD depends upon have changed
+     * since the last snapshot, no snapshot is captured, unless the HUD must be
+     * resent to stop the client fading it out.
+     * 
+     * The main thread never waits for rendering. If the previous snapshot has
+     * not yet been rendered, it is superseded by the new one and dropped, and
+     * counted as a skipped frame. Callers should not capture a new snapshot
+     * while {@link #isHUDUpdateInFlight()}.
+     * 
+     * @return true if a snapshot was handed off; false if the HUD is not
+     *         showing or is unchanged.
      */
-    public void syncPrepareHUDUpdate() {
-        if (isShowingHUD()) {
-            _location = _player.getLocation();
-            _block = _location.getBlock();
-            _fullTime = _location.getWorld().getFullTime();
+    public boolean syncPrepareHUDUpdate() {
+        if (!isShowingHUD()) {
+            _hudWasShowing = false;
+            return false;
         }
+
+        boolean force = _hudInvalid.getAndSet(false);
+        if (!_hudWasShowing) {
+            // Something else may have been showing on the action bar. Resend
+            // the HUD in full.
+            _hudWasShowing = true;
+            _resendHUD.set(true);
+            force = true;
+        }
+
+        Location location = _player.getLocation(_location);
+        long now = System.currentTimeMillis();
+        // Cope with system clock change. No keep-alive while the governor
+        // only sends changes.
+        if (Math.abs(now - _lastCaptureTime) >= NerdPoints.CONFIG.HUD_UPDATE_KEEP_ALIVE_MS &&
+            !NerdPoints.PLUGIN.getHudGovernor().isChangesOnly()) {
+            force = true;
+        }
+        if (!updateHUDInputs(location) && !force) {
+            return false;
+        }
+        _lastCaptureTime = now;
+
+        HudSnapshot snapshot = _captureSnapshot;
+        snapshot.x = location.getX();
+        snapshot.y = location.getY();
+        snapshot.z = location.getZ();
+        snapshot.yaw = location.getYaw();
+        snapshot.blockX = _inputBlockX;
+        snapshot.blockY = _inputBlockY;
+        snapshot.blockZ = _inputBlockZ;
+        snapshot.biome = _inputBiome;
+        snapshot.skyLight = _inputLight >> 4;
+        snapshot.blockLight = _inputLight & 0xF;
+        snapshot.timeText = _inputTimeText;
+        snapshot.tick = NerdPoints.PLUGIN.getHudTicks();
+        snapshot.generation = ++_captureGeneration;
+        snapshot.captureNanos = System.nanoTime();
+
+        HudSnapshot superseded = _pendingSnapshot.getAndSet(snapshot);
+        if (superseded != null) {
+            NerdPoints.PLUGIN.getFrameStats().skip();
+            _captureSnapshot = superseded;
+        } else {
+            HudSnapshot free = _freeSnapshot.getAndSet(null);
+            _captureSnapshot = (free != null) ? free : new HudSnapshot();
+        }
+        return true;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Record the inputs to the HUD at the specified location, quantised to the
+     * precision that the visible HUD actually displays, and return true if
+     * they differ from those last recorded.
+     * 
+     * The block position and world are always compared, since most sections
+     * depend on them. Fine position, yaw, the time section and light are only
+     * compared when a visible section displays them. The time section text is
+     * shared by all players in the world who use the same time format. The
+     * biome and light levels are read from the world's {@link ChunkSampler},
+     * only when displayed.
+     * 
+     * @param location the player's current location.
+     * @return true if the HUD inputs have changed.
+     */
+    protected boolean updateHUDInputs(Location location) {
+        // Changed settings may require inputs that were not recorded.
+        boolean changed = !_hudInputsKnown;
+        if (!_hudInputsKnown) {
+            findHUDInputs();
+            _hudInputsKnown = true;
+        }
+
+        World world = location.getWorld();
+        int blockX = location.getBlockX();
+        int blockY = location.getBlockY();
+        int blockZ = location.getBlockZ();
+        changed |= (world != _inputWorld ||
+                    blockX != _inputBlockX || blockY != _inputBlockY || blockZ != _inputBlockZ);
+        _inputWorld = world;
+        _inputBlockX = blockX;
+        _inputBlockY = blockY;
+        _inputBlockZ = blockZ;
+        ChunkSampler sampler = (_hudUsesBiome || _hudUsesLight)
+            ? NerdPoints.PLUGIN.getWorldEnvironment(world).getChunkSampler() : null;
+        if (changed) {
+            _inputBiome = _hudUsesBiome ? sampler.getBiome(blockX, blockZ) : null;
+        }
+
+        if (_hudUsesFinePosition) {
+            double x = location.getX();
+            double y = location.getY();
+            double z = location.getZ();
+            changed |= (x != _inputX || y != _inputY || z != _inputZ);
+            _inputX = x;
+            _inputY = y;
+            _inputZ = z;
+        }
+
+        float yaw = location.getYaw();
+        int yawKey;
+        switch (_hudYawPrecision) {
+        case YAW_TENTHS:
+            yawKey = getHeadingTenths(yaw);
+            break;
+        case YAW_DEGREES:
+            yawKey = getHeading(yaw);
+            break;
+        case YAW_OCTANTS:
+            yawKey = getOctant(yaw);
+            break;
+        default:
+            yawKey = 0;
+        }
+        changed |= (yawKey != _inputYawKey);
+        _inputYawKey = yawKey;
+
+        if (_hudUsesTime) {
+            String timeText = NerdPoints.PLUGIN.getWorldEnvironment(world).getTimeText(timeFormat.get());
+            changed |= !timeText.equals(_inputTimeText);
+            _inputTimeText = timeText;
+        } else {
+            _inputTimeText = null;
+        }
+
+        if (_hudUsesLight) {
+            int light = sampler.getLight(blockX, blockY, blockZ);
+            changed |= (light != _inputLight);
+            _inputLight = light;
+        }
+        return changed;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Work out which inputs the visible HUD depends upon, from the visibility
+     * settings and the variables referenced by the formats.
+     */
+    protected void findHUDInputs() {
+        Set<String> hud = hudFormat.get().getVariables();
+        Set<String> coords = (coordsVisible.get() && hud.contains("coords"))
+            ? coordsFormat.get().getVariables() : Collections.emptySet();
+        Set<String> compass = (compassVisible.get() && hud.contains("compass"))
+            ? compassFormat.get().getVariables() : Collections.emptySet();
+
+        _hudUsesFinePosition = coords.contains("x.") || coords.contains("y.") || coords.contains("z.");
+
+        if (compass.contains("heading.")) {
+            _hudYawPrecision = YAW_TENTHS;
+        } else if (compass.contains("heading")) {
+            _hudYawPrecision = YAW_DEGREES;
+        } else if (compass.contains("octant")) {
+            _hudYawPrecision = YAW_OCTANTS;
+        } else {
+            _hudYawPrecision = YAW_NONE;
+        }
+
+        _hudUsesTime = timeVisible.get() && hud.contains("time");
+
+        _hudUsesBiome = _hudSections[HUD_BIOME].isVisible() && hud.contains("biome") &&
+                        !biomeFormat.get().getVariables().isEmpty();
+        _hudUsesLight = _hudSections[HUD_LIGHT].isVisible() && hud.contains("light") &&
+                        !lightFormat.get().getVariables().isEmpty();
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return true if this player's HUD is scheduled to be rendered, or is
+     * being rendered.
+     * 
+     * @return true if a frame is in flight.
+     */
+    public boolean isHUDUpdateInFlight() {
+        return _updating.get();
     }
 
     // --------------------------------------------------------------------------
     /**
-     * Perform asynchronous computations of the new HUD text based on state
-     * cached by {@link PlayerState#syncPrepareHUDUpdate()}.
+     * Claim the rendering of this player's HUD, unless it is already
+     * scheduled or running.
+     * 
+     * If this returns true, the caller must arrange for
+     * {@link #runClaimedHUDUpdate()} to be called.
+     * 
+     * @return true if the claim succeeded.
+     */
+    public boolean claimHUDUpdate() {
+        return _updating.compareAndSet(false, true);
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Render and send the HUD from the most recent snapshot, after a
+     * successful call to {@link #claimHUDUpdate()}.
+     */
+    public void runClaimedHUDUpdate() {
+        renderSnapshots();
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Release a successful claim by {@link #claimHUDUpdate()} without
+     * rendering.
+     * 
+     * The pending snapshot is discarded and the HUD invalidated, so that the
+     * main thread captures a new snapshot on its next update.
+     */
+    public void abandonClaimedHUDUpdate() {
+        HudSnapshot snapshot = _pendingSnapshot.getAndSet(null);
+        if (snapshot != null) {
+            _freeSnapshot.set(snapshot);
+        }
+        _hudInvalid.set(true);
+        _updating.set(false);
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Render and send the HUD from the most recent snapshot handed off by
+     * {@link PlayerState#syncPrepareHUDUpdate()}, if any.
+     * 
+     * At most one thread renders a given player's HUD at a time. If another
+     * thread is already rendering, it will pick up the most recent snapshot
+     * itself, so this method returns immediately.
      */
     public void asyncUpdateHUD() {
-        if (!isShowingHUD()) {
-            return;
+        if (_updating.compareAndSet(false, true)) {
+            renderSnapshots();
         }
+    }
 
-        _hudScope.setText("biome", biomeVisible.get() ? biomeFormat.get().expand(_biomeScope) : "");
-        _hudScope.setText("chunk", chunkVisible.get() ? chunkFormat.get().expand(_chunkScope) : "");
-        _hudScope.setText("compass", compassVisible.get() ? compassFormat.get().expand(_compassScope) : "");
-        _hudScope.setText("coords", coordsVisible.get() ? coordsFormat.get().expand(_coordsScope) : "");
-        _hudScope.setText("light", lightVisible.get() ? lightFormat.get().expand(_lightScope) : "");
-        _hudScope.setText("time", timeVisible.get() ? timeFormat.get().expand(_timeScope) : "");
-
-        String uncoloured = hudFormat.get().expand(_hudScope);
-        String message = ChatColor.translateAlternateColorCodes('&', uncoloured);
-        String limited = message.substring(0, Math.min(message.length(), MAX_HUD_LENGTH));
-        _player.spigot().sendMessage(ChatMessageType.ACTION_BAR, TextComponent.fromLegacyText(limited));
+    // --------------------------------------------------------------------------
+    /**
+     * Render pending snapshots until there are none left, then release the
+     * claim on rendering this player's HUD.
+     * 
+     * Snapshots that are older than hud.update.max-snapshot-age-ms, or that
+     * are not newer than the last snapshot rendered, are discarded as late
+     * frames rather than sent out of order.
+     * 
+     * The claim is released even if rendering throws, in which case the
+     * exception propagates to the caller and the next frame is rendered and
+     * sent in full.
+     * 
+     * The caller must have set _updating to true.
+     */
+    protected void renderSnapshots() {
+        do {
+            try {
+                HudSnapshot snapshot;
+                while ((snapshot = _pendingSnapshot.getAndSet(null)) != null) {
+                    try {
+                        long ageNanos = System.nanoTime() - snapshot.captureNanos;
+                        if (snapshot.generation <= _renderedGeneration) {
+                            NerdPoints.PLUGIN.getFrameStats().late();
+                        } else if (ageNanos <= TimeUnit.MILLISECONDS.toNanos(NerdPoints.CONFIG.HUD_UPDATE_MAX_SNAPSHOT_AGE_MS)) {
+                            _renderedGeneration = snapshot.generation;
+                            render(snapshot);
+                        } else {
+                            // The main thread must capture a new snapshot
+                            // even if the HUD inputs don't change again.
+                            NerdPoints.PLUGIN.getFrameStats().late();
+                            _hudInvalid.set(true);
+                        }
+                    } catch (RuntimeException | Error ex) {
+                        // Sections may be half rendered. Start afresh.
+                        _hasRendered = false;
+                        _hudTextFormat = null;
+                        _lastHUDText = null;
+                        _hudInvalid.set(true);
+                        throw ex;
+                    } finally {
+                        _freeSnapshot.set(snapshot);
+                    }
+                }
+            } finally {
+                _updating.set(false);
+            }
+
+            // Catch a snapshot handed off after the last check but before
+            // _updating was cleared.
+        } while (_pendingSnapshot.get() != null && _updating.compareAndSet(false, true));
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Compute the new HUD text from the specified snapshot and send it.
+     * 
+     * Rendering is incremental: only the sections whose inputs differ from
+     * those of the previously rendered snapshot are re-rendered, no more often
+     * than their refresh intervals allow, and the HUD format is only
+     * re-expanded if one of the sections it references, or the format itself,
+     * has changed.
+     * 
+     * The HUD text is only sent to the player if it differs from the text
+     * last sent, or if the last send was long enough ago that the client
+     * would otherwise fade out the action bar.
+     * 
+     * @param snapshot the snapshot.
+     */
+    protected void render(HudSnapshot snapshot) {
+        _snapshot = snapshot;
+        if (_resendHUD.getAndSet(false)) {
+            _lastHUDText = null;
+        }
+
+        int changed = _hasRendered ? snapshot.diff(_renderedSnapshot) : HudSnapshot.ALL;
+        _renderedSnapshot.copyFrom(snapshot);
+        _hasRendered = true;
+
+        Format format = hudFormat.get();
+        boolean dirty = (format != _hudTextFormat);
+        if (dirty) {
+            _hudTextFormat = format;
+            Set<String> variables = format.getVariables();
+            for (int slot = 0; slot < _hudReferences.length; ++slot) {
+                _hudReferences[slot] = variables.contains(HUD_SCHEMA.getName(slot));
+            }
+        }
+        boolean deferred = false;
+        for (int slot = 0; slot < _hudSections.length; ++slot) {
+            // Sections not referenced by the HUD format are never rendered.
+            HudSection section = _hudSections[slot];
+            if (section.update(changed, snapshot.tick) && _hudReferences[slot]) {
+                dirty = true;
+            }
+            deferred |= section.isDeferred() && _hudReferences[slot];
+        }
+        if (deferred) {
+            // Keep capturing snapshots until the deferred changes are shown,
+            // even if the player stops moving.
+            _hudInvalid.set(true);
+        }
+
+        if (dirty) {
+            // Sections are rendered on demand, as the HUD format references
+            // them. Colour codes were translated when the Formats were parsed.
+            if (NerdPoints.CONFIG.HUD_UPDATE_ZERO_ALLOCATION) {
+                // Expand into this player's reused buffer and only create a
+                // new String if the text differs. The buffer belongs to the
+                // player rather than the thread, since the virtual executor
+                // starts a new thread for every task.
+                if (_hudBuffer == null) {
+                    _hudBuffer = new StringBuilder(MAX_HUD_LENGTH);
+                }
+                StringBuilder builder = _hudBuffer;
+                builder.setLength(0);
+                format.expand(_hudScope, builder, MAX_HUD_LENGTH);
+                if (_hudText == null || !_hudText.contentEquals(builder)) {
+                    _hudText = builder.toString();
+                }
+            } else {
+                StringBuilder builder = new StringBuilder(MAX_HUD_LENGTH);
+                format.expand(_hudScope, builder, MAX_HUD_LENGTH);
+                _hudText = builder.toString();
+            }
+        }
+        String text = _hudText;
+
+        long now = System.currentTimeMillis();
+        // Cope with system clock change.
+        if (text.equals(_lastHUDText) &&
+            (Math.abs(now - _lastHUDSendTime) < NerdPoints.CONFIG.HUD_UPDATE_KEEP_ALIVE_MS ||
+             NerdPoints.PLUGIN.getHudGovernor().isChangesOnly())) {
+            return;
+        }
+        _lastHUDText = text;
+        _lastHUDSendTime = now;
+        BaseComponent[] components = NerdPoints.PLUGIN.getComponentCache().get(text);
+        _player.spigot().sendMessage(ChatMessageType.ACTION_BAR, components);
     }
 
     // ------------------------------------------------------------------------
@@ -392,51 +862,96 @@ public class PlayerState {
     static final int MAX_HUD_LENGTH = 128;
 
     /**
-     * Number of ticks added to the world's full time to make it so that the
-     * resultant sum modulo 24000 is the current (24 hour clock) hour times
-     * 1000.
+     * Values of _hudYawPrecision: the precision of the yaw displayed by the
+     * compass section, if at all.
      */
-    static final long TIME_OFFSET = 6000;
+    static final int YAW_NONE = 0;
+    static final int YAW_OCTANTS = 1;
+    static final int YAW_DEGREES = 2;
+    static final int YAW_TENTHS = 3;
 
     /**
-     * Start of sunset. (17:37)
-     *
-     * The cycle is TIME_MOONSET -> TIME_SUNRISE -> TIME_DAY -> TIME_SUNSET ->
-     * TIME_MOONRISE -> TIME_NIGHT.
-     *
-     * Times from https://minecraft.gamepedia.com/Day-night_cycle.
+     * The 8 compass directions shown when formatting %octant%.
      */
-    static final long TIME_SUNSET = 11617;
+    static final String[] OCTANTS = { " S", "SW", " W", "NW", " N", "NE", " E", "SE" };
 
     /**
-     * Time at which beds become usable. Wiki inaccurate. (18:33, empirically)
+     * Variables of the overall HUD format.
      */
-    static final long TIME_MOONRISE = 12550;
+    static final ScopeSchema HUD_SCHEMA = new ScopeSchema("biome", "chunk", "compass", "coords", "light", "time");
 
     /**
-     * First tick when monsters spawn outdoors, in clear weather. (19:11)
+     * Slot indices of the HUD_SCHEMA variables.
      */
-    static final long TIME_NIGHT = 13183;
+    static final int HUD_BIOME = HUD_SCHEMA.getSlot("biome");
+    static final int HUD_CHUNK = HUD_SCHEMA.getSlot("chunk");
+    static final int HUD_COMPASS = HUD_SCHEMA.getSlot("compass");
+    static final int HUD_COORDS = HUD_SCHEMA.getSlot("coords");
+    static final int HUD_LIGHT = HUD_SCHEMA.getSlot("light");
+    static final int HUD_TIME = HUD_SCHEMA.getSlot("time");
 
     /**
-     * Time at which the moon begins setting (not on wiki, arbitrarily 03:30)
+     * Variables of the biome format.
      */
-    static final long TIME_MOONSET = 21500;
+    static final ScopeSchema BIOME_SCHEMA = new ScopeSchema("biome");
 
     /**
-     * Sunrise begins. The horizon starts to brighten. (04:33)
+     * HudSnapshot inputs of the biome format variables, indexed by slot.
      */
-    static final long TIME_SUNRISE = 22550;
+    static final int[] BIOME_DEPENDENCIES = { HudSnapshot.BIOME };
 
     /**
-     * Time when sunrise ends. (06:27)
+     * Variables of the chunk format.
      */
-    static final long TIME_DAY = 450;
+    static final ScopeSchema CHUNK_SCHEMA = new ScopeSchema("cx", "cy", "cz", "x", "y", "z");
 
     /**
-     * The 8 compass directions shown when formatting %octant%.
+     * HudSnapshot inputs of the chunk format variables, indexed by slot.
      */
-    static final String[] OCTANTS = { " S", "SW", " W", "NW", " N", "NE", " E", "SE" };
+    static final int[] CHUNK_DEPENDENCIES = {
+        HudSnapshot.CHUNK, HudSnapshot.CHUNK, HudSnapshot.CHUNK,
+        HudSnapshot.BLOCK, HudSnapshot.BLOCK, HudSnapshot.BLOCK
+    };
+
+    /**
+     * Variables of the compass format.
+     */
+    static final ScopeSchema COMPASS_SCHEMA = new ScopeSchema("octant", "heading", "heading.");
+
+    /**
+     * Slot indices of the COMPASS_SCHEMA variables.
+     */
+    static final int COMPASS_OCTANT = COMPASS_SCHEMA.getSlot("octant");
+    static final int COMPASS_HEADING = COMPASS_SCHEMA.getSlot("heading");
+    static final int COMPASS_HEADING_TENTHS = COMPASS_SCHEMA.getSlot("heading.");
+
+    /**
+     * HudSnapshot inputs of the compass format variables, indexed by slot.
+     */
+    static final int[] COMPASS_DEPENDENCIES = { HudSnapshot.YAW, HudSnapshot.YAW, HudSnapshot.YAW };
+
+    /**
+     * Variables of the coords format.
+     */
+    static final ScopeSchema COORDS_SCHEMA = new ScopeSchema("x", "y", "z", "x.", "y.", "z.");
+
+    /**
+     * HudSnapshot inputs of the coords format variables, indexed by slot.
+     */
+    static final int[] COORDS_DEPENDENCIES = {
+        HudSnapshot.BLOCK, HudSnapshot.BLOCK, HudSnapshot.BLOCK,
+        HudSnapshot.FINE, HudSnapshot.FINE, HudSnapshot.FINE
+    };
+
+    /**
+     * Variables of the light format.
+     */
+    static final ScopeSchema LIGHT_SCHEMA = new ScopeSchema("light", "skylight", "blocklight");
+
+    /**
+     * HudSnapshot inputs of the light format variables, indexed by slot.
+     */
+    static final int[] LIGHT_DEPENDENCIES = { HudSnapshot.LIGHT, HudSnapshot.LIGHT, HudSnapshot.LIGHT };
 
     /**
      * The Player.
@@ -444,54 +959,148 @@ public class PlayerState {
     protected Player _player;
 
     /**
-     * Most recent Location of Player.
+     * The player's location, reused by every update; main thread only.
+     */
+    protected final Location _location = new Location(null, 0, 0, 0);
+
+    /**
+     * The snapshot that the main thread will fill in next.
+     */
+    protected HudSnapshot _captureSnapshot = new HudSnapshot();
+
+    /**
+     * The most recently captured snapshot, handed off to be rendered, or null
+     * if it has been taken for rendering.
+     */
+    protected final AtomicReference<HudSnapshot> _pendingSnapshot = new AtomicReference<>();
+
+    /**
+     * A snapshot that has been rendered and can be reused by the main thread,
+     * or null.
+     */
+    protected final AtomicReference<HudSnapshot> _freeSnapshot = new AtomicReference<>(new HudSnapshot());
+
+    /**
+     * The snapshot currently being rendered; read by the Scope variables.
      */
-    protected Location _location;
+    protected HudSnapshot _snapshot;
 
     /**
-     * Most recent block at _location.
+     * True while a thread is rendering this player's HUD, or is scheduled to.
      */
-    protected Block _block;
+    protected final AtomicBoolean _updating = new AtomicBoolean();
 
     /**
-     * Full time (ticks) in the player's current world.
+     * True if the HUD was showing at the last snapshot capture; main thread
+     * only.
      */
-    protected long _fullTime;
+    protected boolean _hudWasShowing;
+
+    /**
+     * Set when the HUD must be resent in full, regardless of its text.
+     */
+    protected final AtomicBoolean _resendHUD = new AtomicBoolean();
+
+    /**
+     * Set when a new snapshot must be captured, regardless of whether the HUD
+     * inputs have changed.
+     */
+    protected final AtomicBoolean _hudInvalid = new AtomicBoolean();
+
+    /**
+     * The time at which the last snapshot was captured; main thread only.
+     */
+    protected long _lastCaptureTime;
+
+    /**
+     * The generation of the most recently captured snapshot; accessed only by
+     * the main thread.
+     */
+    protected long _captureGeneration;
+
+    /**
+     * The generation of the most recently rendered snapshot; accessed only by
+     * the rendering thread.
+     */
+    protected long _renderedGeneration;
+
+    /**
+     * True if the _hudUses* fields reflect the current settings; main thread
+     * only, as are all the fields below that describe the HUD inputs.
+     */
+    protected boolean _hudInputsKnown;
+
+    /**
+     * True if the HUD displays fractional coordinates.
+     */
+    protected boolean _hudUsesFinePosition;
+
+    /**
+     * The precision of the yaw displayed by the HUD; one of the YAW_*
+     * constants.
+     */
+    protected int _hudYawPrecision;
+
+    /**
+     * True if the HUD displays the time section.
+     */
+    protected boolean _hudUsesTime;
+
+    /**
+     * True if the HUD displays the biome.
+     */
+    protected boolean _hudUsesBiome;
+
+    /**
+     * True if the HUD displays light levels.
+     */
+    protected boolean _hudUsesLight;
+
+    /**
+     * The HUD inputs recorded at the last update.
+     */
+    protected World _inputWorld;
+    protected int _inputBlockX, _inputBlockY, _inputBlockZ;
+    protected Biome _inputBiome;
+    protected double _inputX, _inputY, _inputZ;
+    protected int _inputYawKey;
+    protected String _inputTimeText;
+    protected int _inputLight;
 
     /**
      * Scope containing HUD variables.
      */
-    protected Scope _hudScope = new Scope();
+    protected Scope _hudScope = new Scope(HUD_SCHEMA);
+
+    /**
+     * The sections of the HUD, indexed by their slot in HUD_SCHEMA.
+     */
+    protected final HudSection[] _hudSections = new HudSection[HUD_SCHEMA.size()];
 
     /**
      * Scope containing biome variables.
      */
-    protected Scope _biomeScope = new Scope();
+    protected Scope _biomeScope = new Scope(BIOME_SCHEMA);
 
     /**
      * Scope containing chunk variables.
      */
-    protected Scope _chunkScope = new Scope();
+    protected Scope _chunkScope = new Scope(CHUNK_SCHEMA);
 
     /**
      * Scope containing compass variables.
      */
-    protected Scope _compassScope = new Scope();
+    protected Scope _compassScope = new Scope(COMPASS_SCHEMA);
 
     /**
      * Scope containing coords variables.
      */
-    protected Scope _coordsScope = new Scope();
+    protected Scope _coordsScope = new Scope(COORDS_SCHEMA);
 
     /**
      * Scope containing light variables.
      */
-    protected Scope _lightScope = new Scope();
-
-    /**
-     * Scope containing time variables.
-     */
-    protected Scope _timeScope = new Scope();
+    protected Scope _lightScope = new Scope(LIGHT_SCHEMA);
 
     /**
      * List of all settings.
@@ -503,4 +1112,49 @@ public class PlayerState {
      */
     protected long _suspendTime;
 
+    /**
+     * The inputs of the most recently rendered snapshot; accessed only by the
+     * rendering thread, as are all the fields below.
+     */
+    protected final HudSnapshot _renderedSnapshot = new HudSnapshot();
+
+    /**
+     * True if _renderedSnapshot has been filled in.
+     */
+    protected boolean _hasRendered;
+
+    /**
+     * The HUD format that _hudText was expanded from.
+     */
+    protected Format _hudTextFormat;
+
+    /**
+     * True for each HUD section, indexed by slot in HUD_SCHEMA, that is
+     * referenced by _hudTextFormat.
+     */
+    protected final boolean[] _hudReferences = new boolean[HUD_SCHEMA.size()];
+
+    /**
+     * The most recently expanded HUD text.
+     */
+    protected String _hudText;
+
+    /**
+     * Buffer into which the HUD text is expanded when
+     * hud.update.zero-allocation is enabled, or null until first needed;
+     * accessed only by the rendering thread.
+     */
+    protected StringBuilder _hudBuffer;
+
+    /**
+     * The HUD text most recently sent to the player, or null if the HUD must
+     * be sent regardless of its text; accessed only by the rendering thread.
+     */
+    protected String _lastHUDText;
+
+    /**
+     * The time at which _lastHUDText was sent.
+     */
+    protected long _lastHUDSendTime;
+
 } // class PlayerState
\ No newline at end of file
@@ -0,0 +1,120 @@
+package nu.nerd.nerdpoints;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+
+// ----------------------------------------------------------------------------
+/**
+ * Renders the HUDs of a contiguous slice of an array of players, each of
+ * whose HUD updates has been claimed by {@link PlayerState#claimHUDUpdate()}.
+ *
+ * In a ForkJoinPool, a slice larger than the threshold is split in half
+ * recursively, so that idle workers can steal halves of the remaining work
+ * and the load is balanced even when some players take longer than others.
+ */
+class RenderBatch extends RecursiveAction {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param pool the pool, which records the time taken.
+     * @param states the players' states.
+     * @param from the index of the first player in the slice.
+     * @param to the index after the last player in the slice.
+     * @param threshold the largest slice that is rendered without splitting.
+     */
+    RenderBatch(RenderPool pool, PlayerState[] states, int from, int to, int threshold) {
+        _pool = pool;
+        _states = states;
+        _from = from;
+        _to = to;
+        _threshold = threshold;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Render the HUDs of a slice of an array of players on the current
+     * thread.
+     *
+     * A failure to render one player's HUD is logged and does not prevent
+     * the others from being rendered. If an Error aborts the slice, the
+     * claims of the players not yet rendered are abandoned, so that their
+     * HUDs are updated again on later ticks.
+     *
+     * @param pool the pool that records the time taken, or null if rendering
+     *        on the main thread.
+     * @param states the players' states.
+     * @param from the index of the first player in the slice.
+     * @param to the index after the last player in the slice.
+     */
+    static void render(RenderPool pool, PlayerState[] states, int from, int to) {
+        long start = System.nanoTime();
+        int i = from;
+        try {
+            for (; i < to; ++i) {
+                try {
+                    states[i].runClaimedHUDUpdate();
+                } catch (RuntimeException ex) {
+                    NerdPoints.PLUGIN.getLogger().log(Level.SEVERE, "Error rendering HUD of " +
+                                                                    states[i].getPlayer().getName(), ex);
+                }
+            }
+        } finally {
+            // The player at index i released their own claim.
+            for (int j = i + 1; j < to; ++j) {
+                states[j].abandonClaimedHUDUpdate();
+            }
+        }
+        if (pool != null) {
+            pool.recordRender(to - from, System.nanoTime() - start);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+        if (_to - _from <= _threshold) {
+            render(_pool, _states, _from, _to);
+        } else {
+            // Unlike invokeAll(), never cancel the forked half if the other
+            // half throws: its players are claimed and must be rendered.
+            int middle = (_from + _to) >>> 1;
+            RenderBatch second = new RenderBatch(_pool, _states, middle, _to, _threshold);
+            second.fork();
+            try {
+                new RenderBatch(_pool, _states, _from, middle, _threshold).compute();
+            } finally {
+                second.join();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The pool, which records the time taken.
+     */
+    protected final RenderPool _pool;
+
+    /**
+     * The players' states.
+     */
+    protected final PlayerState[] _states;
+
+    /**
+     * The index of the first player in the slice.
+     */
+    protected final int _from;
+
+    /**
+     * The index after the last player in the slice.
+     */
+    protected final int _to;
+
+    /**
+     * The largest slice that is rendered without splitting.
+     */
+    protected final int _threshold;
+} // class RenderBatch
@@ -0,0 +1,281 @@
+package nu.nerd.nerdpoints;
+
+// ----------------------------------------------------------------------------
+/**
+ * Decides, each tick, whether HUDs are rendered inline on the main thread or
+ * handed off to the {@link RenderPool}, and in how many batches.
+ *
+ * When hud.update.parallel is "auto", the planner maintains exponentially
+ * weighted moving averages of:
+ * <ul>
+ * <li>the cost of rendering one player's HUD, measured both inline and on
+ * the pool's threads, and</li>
+ * <li>the cost of a hand-off to the pool: the main thread's time submitting
+ * the batches plus the delay until a pool thread starts on them.</li>
+ * </ul>
+ * Rendering is inline when the estimated inline cost does not exceed the
+ * hand-off cost. Otherwise it is parallel, with one batch per hand-off's
+ * worth of rendering, up to the pool's parallelism. Inline ticks never
+ * measure the hand-off, so a parallel tick is forced periodically to keep
+ * that estimate current.
+ *
+ * When hud.update.parallel is true or false, the planner always chooses
+ * parallel (one batch per thread) or inline, respectively, but still takes
+ * measurements.
+ *
+ * All methods must be called from the main thread.
+ */
+public class RenderPlanner {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of batches in which to render the specified number of
+     * players this tick.
+     *
+     * @param count the number of players whose HUDs need rendering.
+     * @param pool the pool that will render them in parallel.
+     * @return the number of batches, or 0 to render inline.
+     */
+    public int plan(int count, RenderPool pool) {
+        absorbPoolMeasurements(pool);
+
+        int batches;
+        if (!NerdPoints.CONFIG.HUD_UPDATE_PARALLEL) {
+            batches = 0;
+        } else if (!NerdPoints.CONFIG.HUD_UPDATE_ADAPTIVE) {
+            batches = Math.min(count, pool.getParallelism());
+        } else {
+            double inlineNanos = count * _renderNanos;
+            boolean probe = (count > 1 && _ticksSinceParallel >= PROBE_TICKS);
+            if (inlineNanos <= _handoffNanos && !probe) {
+                batches = 0;
+            } else {
+                int worthwhile = (int) Math.min(Integer.MAX_VALUE, inlineNanos / Math.max(1, _handoffNanos));
+                batches = Math.max(1, Math.min(Math.min(count, pool.getParallelism()), worthwhile));
+            }
+        }
+
+        _lastCount = count;
+        _lastBatches = batches;
+        if (batches == 0) {
+            ++_inlineTicks;
+            ++_ticksSinceParallel;
+        } else {
+            ++_parallelTicks;
+            _ticksSinceParallel = 0;
+        }
+        return batches;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Record the time taken to render players inline.
+     *
+     * @param players the number of players rendered.
+     * @param nanos the time taken.
+     */
+    public void recordInline(int players, long nanos) {
+        if (players > 0) {
+            _renderNanos = average(_renderNanos, (double) nanos / players);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Record the main thread's time submitting batches to the pool.
+     *
+     * @param nanos the time taken.
+     */
+    public void recordSubmit(long nanos) {
+        _submitNanos = average(_submitNanos, nanos);
+        _handoffNanos = _submitNanos + _startNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the most recent tick rendered in parallel.
+     *
+     * @return true if the most recent tick rendered in parallel.
+     */
+    public boolean isParallel() {
+        return _lastBatches > 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of players rendered in the most recent tick.
+     *
+     * @return the number of players rendered in the most recent tick.
+     */
+    public int getLastCount() {
+        return _lastCount;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of batches in the most recent tick, or 0 if inline.
+     *
+     * @return the number of batches.
+     */
+    public int getLastBatches() {
+        return _lastBatches;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the estimated cost of rendering one player's HUD.
+     *
+     * @return the cost in nanoseconds.
+     */
+    public double getRenderNanos() {
+        return _renderNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the estimated cost of a hand-off to the pool.
+     *
+     * @return the cost in nanoseconds.
+     */
+    public double getHandoffNanos() {
+        return _handoffNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of ticks rendered inline.
+     *
+     * @return the number of ticks rendered inline.
+     */
+    public long getInlineTicks() {
+        return _inlineTicks;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of ticks rendered in parallel.
+     *
+     * @return the number of ticks rendered in parallel.
+     */
+    public long getParallelTicks() {
+        return _parallelTicks;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Fold the measurements taken on the pool's threads since the previous
+     * call into the averages.
+     *
+     * @param pool the pool.
+     */
+    protected void absorbPoolMeasurements(RenderPool pool) {
+        if (pool != _pool) {
+            // The pool was replaced; its counters start from zero.
+            _pool = pool;
+            _poolRenderNanos = _poolRenderedPlayers = _poolStartNanos = _poolStarts = 0;
+        }
+
+        long renderNanos = pool.getRenderNanos();
+        long renderedPlayers = pool.getRenderedPlayers();
+        if (renderedPlayers > _poolRenderedPlayers) {
+            _renderNanos = average(_renderNanos, (double) (renderNanos - _poolRenderNanos) /
+                                                 (renderedPlayers - _poolRenderedPlayers));
+            _poolRenderNanos = renderNanos;
+            _poolRenderedPlayers = renderedPlayers;
+        }
+
+        long startNanos = pool.getStartNanos();
+        long starts = pool.getStarts();
+        if (starts > _poolStarts) {
+            _startNanos = average(_startNanos, (double) (startNanos - _poolStartNanos) / (starts - _poolStarts));
+            _handoffNanos = _submitNanos + _startNanos;
+            _poolStartNanos = startNanos;
+            _poolStarts = starts;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the new value of a moving average after a sample.
+     *
+     * @param average the current average, or 0 if there have been no samples.
+     * @param sample the sample.
+     * @return the new average.
+     */
+    protected static double average(double average, double sample) {
+        return (average == 0) ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Weight of each new sample in the moving averages.
+     */
+    static final double SMOOTHING = 0.1;
+
+    /**
+     * Maximum number of consecutive inline ticks before a parallel tick is
+     * forced, to measure the hand-off cost.
+     */
+    static final int PROBE_TICKS = 200;
+
+    /**
+     * Assumed delay in nanoseconds from submission of a batch until a pool
+     * thread starts on it, until measured.
+     */
+    static final double DEFAULT_START_NANOS = 50000;
+
+    /**
+     * The pool whose counters were last read.
+     */
+    protected RenderPool _pool;
+
+    /**
+     * The pool's counters when last read.
+     */
+    protected long _poolRenderNanos, _poolRenderedPlayers, _poolStartNanos, _poolStarts;
+
+    /**
+     * Moving average cost of rendering one player's HUD, in nanoseconds.
+     */
+    protected double _renderNanos;
+
+    /**
+     * Moving average of the main thread's time submitting batches.
+     */
+    protected double _submitNanos;
+
+    /**
+     * Moving average of the delay from submission until a pool thread starts
+     * on a batch.
+     */
+    protected double _startNanos = DEFAULT_START_NANOS;
+
+    /**
+     * Estimated cost of a hand-off: _submitNanos + _startNanos.
+     */
+    protected double _handoffNanos = DEFAULT_START_NANOS;
+
+    /**
+     * The number of players rendered in the most recent tick.
+     */
+    protected int _lastCount;
+
+    /**
+     * The number of batches in the most recent tick, or 0 if inline.
+     */
+    protected int _lastBatches;
+
+    /**
+     * The number of consecutive ticks rendered inline.
+     */
+    protected int _ticksSinceParallel;
+
+    /**
+     * The number of ticks rendered inline.
+     */
+    protected long _inlineTicks;
+
+    /**
+     * The number of ticks rendered in parallel.
+     */
+    protected long _parallelTicks;
+} // class RenderPlanner
@@ -0,0 +1,507 @@
+package nu.nerd.nerdpoints;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// ----------------------------------------------------------------------------
+/**
+ * The Executor that renders and sends player HUDs off the main thread.
+ *
+ * The backend is selected by hud.update.executor:
+ * <ul>
+ * <li>fork-join: a ForkJoinPool of hud.update.threads threads.</li>
+ * <li>fixed: a fixed pool of hud.update.threads platform threads.</li>
+ * <li>single: a single dedicated render thread.</li>
+ * <li>virtual: a new virtual thread per task; requires Java 21 or later.</li>
+ * </ul>
+ * A thread count of 0 or less selects one thread per available processor.
+ * Platform threads are named "NerdPoints-HUD-n", are daemons, and run below
+ * normal priority, so that they yield to the server's own threads.
+ *
+ * HUD work is submitted in batches, each rendering a contiguous slice of an
+ * array of players, so that the cost of submitting tasks does not grow with
+ * the number of players. A ForkJoinPool receives a single task that splits
+ * itself recursively; other backends receive one slice per batch. The
+ * number of batches is decided by the {@link RenderPlanner}.
+ *
+ * The time taken to render each slice, and the delay from submission until a
+ * thread starts on a batch, are accumulated for the RenderPlanner.
+ *
+ * A RenderPool counts the tasks it has accepted that have not yet finished,
+ * regardless of backend, so that callers can tell when HUD work is done, and
+ * the calls to {@link #render(PlayerState[], int, int)} whose batches have
+ * not all finished, so that callers can bound the work queued.
+ */
+public class RenderPool implements Executor {
+    // ------------------------------------------------------------------------
+    /**
+     * Create a RenderPool with the specified backend.
+     *
+     * An unrecognised backend, or virtual threads on a Java version that does
+     * not support them, is logged and replaced with fork-join.
+     *
+     * @param backend the name of the backend: "fork-join", "fixed", "single"
+     *        or "virtual".
+     * @param threads the number of threads; 0 or less for one per available
+     *        processor. Ignored by single and virtual.
+     * @return the RenderPool.
+     */
+    public static RenderPool create(String backend, int threads) {
+        int poolThreads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        String name = (backend != null) ? backend.toLowerCase() : FORK_JOIN;
+        switch (name) {
+        case FIXED:
+            return new RenderPool(backend, threads, FIXED, poolThreads,
+                                  Executors.newFixedThreadPool(poolThreads, newThreadFactory()));
+        case SINGLE:
+            return new RenderPool(backend, threads, SINGLE, 1,
+                                  Executors.newSingleThreadExecutor(newThreadFactory()));
+        case VIRTUAL:
+            try {
+                return new RenderPool(backend, threads, VIRTUAL, 0, newVirtualThreadExecutor());
+            } catch (ReflectiveOperationException ex) {
+                NerdPoints.PLUGIN.getLogger().warning("Virtual threads require Java 21 or later; using " +
+                                                      FORK_JOIN + ".");
+            }
+            break;
+        case FORK_JOIN:
+            break;
+        default:
+            NerdPoints.PLUGIN.getLogger().warning("Invalid HUD executor: " + backend + "; using " + FORK_JOIN + ".");
+            break;
+        }
+        return new RenderPool(backend, threads, FORK_JOIN, poolThreads,
+                              new ForkJoinPool(poolThreads, RenderPool::newForkJoinWorkerThread, null, false));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if this pool was created from the specified configuration,
+     * and so need not be replaced when the configuration is reloaded.
+     *
+     * @param backend the configured backend name.
+     * @param threads the configured number of threads.
+     * @return true if this pool was created from the specified configuration.
+     */
+    public boolean isConfiguredAs(String backend, int threads) {
+        return String.valueOf(backend).equalsIgnoreCase(String.valueOf(_configuredBackend)) &&
+               threads == _configuredThreads;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the name of the backend actually in use.
+     *
+     * @return the name of the backend.
+     */
+    public String getBackend() {
+        return _backend;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of threads, or 0 for virtual threads, which are
+     * created per task.
+     *
+     * @return the number of threads.
+     */
+    public int getThreads() {
+        return _threads;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of threads that can render concurrently: the number
+     * of threads, or the number of available processors for virtual threads.
+     *
+     * @return the parallelism.
+     */
+    public int getParallelism() {
+        return (_threads > 0) ? _threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of calls to {@link #render(PlayerState[], int, int)}
+     * whose batches have not all finished: the ticks' worth of HUD work that
+     * is queued or in progress.
+     *
+     * @return the number of unfinished renders.
+     */
+    public int getPendingRenders() {
+        return _pendingRenders.get();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total time spent rendering HUDs on this pool's threads.
+     *
+     * @return the total time in nanoseconds.
+     */
+    public long getRenderNanos() {
+        return _renderNanos.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total number of HUDs rendered on this pool's threads.
+     *
+     * @return the total number of HUDs rendered.
+     */
+    public long getRenderedPlayers() {
+        return _renderedPlayers.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total delay from submission of batches until a thread
+     * started on them.
+     *
+     * @return the total delay in nanoseconds.
+     */
+    public long getStartNanos() {
+        return _startNanos.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of batches started.
+     *
+     * @return the number of batches started.
+     */
+    public long getStarts() {
+        return _starts.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Run the specified task on the backend.
+     *
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    @Override
+    public void execute(Runnable task) {
+        _pending.incrementAndGet();
+        try {
+            _executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    _pending.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException ex) {
+            _pending.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Render the HUDs of the specified players, whose HUD updates have been
+     * claimed by {@link PlayerState#claimHUDUpdate()}.
+     *
+     * @param states the players' states; must not be modified afterwards.
+     * @param count the number of players, starting at index 0.
+     * @param batches the number of batches, at least 1.
+     *
+     * If the backend refuses a batch, e.g. because it has been shut down
+     * during a reload, that batch and any after it are rendered on the
+     * calling thread instead, so that every claimed player is released.
+     */
+    public void render(PlayerState[] states, int count, int batches) {
+        long submitNanos = System.nanoTime();
+        _pendingRenders.incrementAndGet();
+        if (_executor instanceof ForkJoinPool) {
+            // Split into a few more slices than batches, so that workers
+            // that finish early can steal from those that don't. A single
+            // batch is not split at all.
+            int slices = (batches > 1) ? batches * SLICES_PER_THREAD : 1;
+            int threshold = Math.max(1, (count + slices - 1) / slices);
+            try {
+                execute(() -> {
+                    try {
+                        recordStart(submitNanos);
+                        new RenderBatch(this, states, 0, count, threshold).invoke();
+                    } finally {
+                        _pendingRenders.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                _pendingRenders.decrementAndGet();
+                RenderBatch.render(null, states, 0, count);
+            }
+        } else {
+            AtomicInteger remaining = new AtomicInteger(batches);
+            for (int batch = 0; batch < batches; ++batch) {
+                int from = (int) ((long) count * batch / batches);
+                int to = (int) ((long) count * (batch + 1) / batches);
+                try {
+                    execute(() -> {
+                        try {
+                            recordStart(submitNanos);
+                            RenderBatch.render(this, states, from, to);
+                        } finally {
+                            if (remaining.decrementAndGet() == 0) {
+                                _pendingRenders.decrementAndGet();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // Batches already submitted still finish normally.
+                    if (remaining.addAndGet(batch - batches) == 0) {
+                        _pendingRenders.decrementAndGet();
+                    }
+                    RenderBatch.render(null, states, from, count);
+                    return;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Record the time taken to render a slice of players on a pool thread.
+     *
+     * @param players the number of players rendered.
+     * @param nanos the time taken.
+     */
+    void recordRender(int players, long nanos) {
+        _renderedPlayers.add(players);
+        _renderNanos.add(nanos);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Record the start of a batch on a pool thread.
+     *
+     * @param submitNanos the System.nanoTime() when the batch was submitted.
+     */
+    protected void recordStart(long submitNanos) {
+        _starts.increment();
+        _startNanos.add(System.nanoTime() - submitNanos);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if all accepted tasks have finished.
+     *
+     * @return true if all accepted tasks have finished.
+     */
+    public boolean isIdle() {
+        return _pending.get() == 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Wait until all accepted tasks have finished.
+     *
+     * @param timeoutMillis the maximum time to wait.
+     * @return true if all tasks finished within the timeout.
+     */
+    public boolean awaitIdle(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!isIdle()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_POLL_NANOS);
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stop accepting tasks. Tasks already accepted run to completion.
+     */
+    public void shutdown() {
+        _executor.shutdown();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a description of the backend, e.g. "fork-join (4 threads)".
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return (_threads > 0) ? _backend + " (" + _threads + (_threads == 1 ? " thread)" : " threads)")
+                              : _backend;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param configuredBackend the configured backend name.
+     * @param configuredThreads the configured number of threads.
+     * @param backend the name of the backend actually in use.
+     * @param threads the number of threads, or 0 if created per task.
+     * @param executor the backend.
+     */
+    protected RenderPool(String configuredBackend, int configuredThreads,
+                         String backend, int threads, ExecutorService executor) {
+        _configuredBackend = configuredBackend;
+        _configuredThreads = configuredThreads;
+        _backend = backend;
+        _threads = threads;
+        _executor = executor;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a factory of named, low priority, daemon platform threads.
+     *
+     * @return the ThreadFactory.
+     */
+    protected static ThreadFactory newThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(THREAD_PRIORITY);
+            return thread;
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Create a named, low priority ForkJoinPool worker thread.
+     *
+     * @param pool the pool.
+     * @return the worker thread.
+     */
+    protected static ForkJoinWorkerThread newForkJoinWorkerThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName(THREAD_NAME + (thread.getPoolIndex() + 1));
+        thread.setPriority(THREAD_PRIORITY);
+        return thread;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return an ExecutorService that starts a new, named virtual thread for
+     * each task.
+     *
+     * The plugin is compiled for Java 8, so the Java 21 API is called
+     * reflectively.
+     *
+     * @return the ExecutorService.
+     * @throws ReflectiveOperationException if virtual threads are not
+     *         supported.
+     */
+    protected static ExecutorService newVirtualThreadExecutor() throws ReflectiveOperationException {
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME, 1L);
+        ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+            .invoke(null, factory);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Backend name: a ForkJoinPool.
+     */
+    public static final String FORK_JOIN = "fork-join";
+
+    /**
+     * Backend name: a fixed pool of platform threads.
+     */
+    public static final String FIXED = "fixed";
+
+    /**
+     * Backend name: a single dedicated render thread.
+     */
+    public static final String SINGLE = "single";
+
+    /**
+     * Backend name: a virtual thread per task.
+     */
+    public static final String VIRTUAL = "virtual";
+
+    /**
+     * Prefix of the names of render threads.
+     */
+    static final String THREAD_NAME = "NerdPoints-HUD-";
+
+    /**
+     * Priority of platform render threads.
+     */
+    static final int THREAD_PRIORITY = Thread.NORM_PRIORITY - 2;
+
+    /**
+     * Number of slices per ForkJoinPool thread into which a batch is split.
+     */
+    static final int SLICES_PER_THREAD = 4;
+
+    /**
+     * Interval between checks for idleness in awaitIdle().
+     */
+    static final long IDLE_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * The configured backend name.
+     */
+    protected final String _configuredBackend;
+
+    /**
+     * The configured number of threads.
+     */
+    protected final int _configuredThreads;
+
+    /**
+     * The name of the backend actually in use.
+     */
+    protected final String _backend;
+
+    /**
+     * The number of threads, or 0 if created per task.
+     */
+    protected final int _threads;
+
+    /**
+     * The backend.
+     */
+    protected final ExecutorService _executor;
+
+    /**
+     * The number of accepted tasks that have not yet finished.
+     */
+    protected final AtomicInteger _pending = new AtomicInteger();
+
+    /**
+     * The number of calls to render() whose batches have not all finished.
+     */
+    protected final AtomicInteger _pendingRenders = new AtomicInteger();
+
+    /**
+     * Total time spent rendering HUDs on this pool's threads.
+     */
+    protected final LongAdder _renderNanos = new LongAdder();
+
+    /**
+     * Total number of HUDs rendered on this pool's threads.
+     */
+    protected final LongAdder _renderedPlayers = new LongAdder();
+
+    /**
+     * Total delay from submission of batches until a thread started on them.
+     */
+    protected final LongAdder _startNanos = new LongAdder();
+
+    /**
+     * Number of batches started.
+     */
+    protected final LongAdder _starts = new LongAdder();
+} // class RenderPool
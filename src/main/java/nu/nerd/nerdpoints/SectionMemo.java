@@ -0,0 +1,206 @@
+package nu.nerd.nerdpoints;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import nu.nerd.nerdpoints.format.Format;
+import nu.nerd.nerdpoints.format.ScopeSchema;
+
+// ----------------------------------------------------------------------------
+/**
+ * A bounded memo table of rendered HUD section text, shared by all players.
+ *
+ * Entries are keyed by the section, the section's {@link Format} and a
+ * number encoding the values of the inputs displayed by the format, e.g. the
+ * compass octant or the biome. The section is part of the key because the
+ * same interned Format may be used by several sections whose inputs are
+ * encoded differently. Formats are interned, so players who use the same section format,
+ * including the configured defaults, share entries, and a section is rendered
+ * once for all players who would see the same text.
+ *
+ * The table is direct-mapped: each key hashes to a single slot, and a new
+ * entry simply replaces whatever was in its slot. Entries are immutable, so
+ * lookups and stores need no locks and can proceed concurrently from any
+ * thread.
+ *
+ * Hits and misses are counted per section, for /nerdpoints stats.
+ */
+public class SectionMemo {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of entries; rounded up to a power of
+     *        two.
+     */
+    public SectionMemo(int capacity) {
+        _hits = new LongAdder[PlayerState.HUD_SCHEMA.size()];
+        _misses = new LongAdder[PlayerState.HUD_SCHEMA.size()];
+        for (int i = 0; i < _hits.length; ++i) {
+            _hits[i] = new LongAdder();
+            _misses[i] = new LongAdder();
+        }
+        setCapacity(capacity);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set the maximum number of entries, discarding all entries.
+     *
+     * This must be called when the configuration is reloaded, since the text
+     * of some variables (e.g. biome names) depends on it.
+     *
+     * @param capacity the maximum number of entries; rounded up to a power of
+     *        two.
+     */
+    public void setCapacity(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        _table = new AtomicReferenceArray<>(Math.min(size, MAX_CAPACITY));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the text previously stored for the specified section, format
+     * and key.
+     *
+     * @param section the slot of the section in the HUD schema.
+     * @param format the section format.
+     * @param key the encoded inputs of the section.
+     * @return the text, or null if not found.
+     */
+    public String get(int section, Format format, long key) {
+        AtomicReferenceArray<Entry> table = _table;
+        Entry entry = table.get(index(table, section, format, key));
+        if (entry != null && entry.section == section && entry.format == format && entry.key == key) {
+            _hits[section].increment();
+            return entry.text;
+        }
+        _misses[section].increment();
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Store the text rendered for the specified section, format and key.
+     *
+     * @param section the slot of the section in the HUD schema.
+     * @param format the section format.
+     * @param key the encoded inputs of the section.
+     * @param text the rendered text.
+     */
+    public void put(int section, Format format, long key, String text) {
+        AtomicReferenceArray<Entry> table = _table;
+        table.set(index(table, section, format, key), new Entry(section, format, key, text));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the schema of the HUD, whose slots identify sections.
+     *
+     * @return the schema of the HUD.
+     */
+    public ScopeSchema getSections() {
+        return PlayerState.HUD_SCHEMA;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lookups for the specified section that found text.
+     *
+     * @param section the slot of the section in the HUD schema.
+     * @return the number of hits.
+     */
+    public long getHits(int section) {
+        return _hits[section].sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lookups for the specified section that had to
+     * render the text.
+     *
+     * @param section the slot of the section in the HUD schema.
+     * @return the number of misses.
+     */
+    public long getMisses(int section) {
+        return _misses[section].sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the index of the slot in the table for the specified section,
+     * format and key.
+     *
+     * @param table the table.
+     * @param section the slot of the section in the HUD schema.
+     * @param format the section format.
+     * @param key the encoded inputs of the section.
+     * @return the index.
+     */
+    protected static int index(AtomicReferenceArray<Entry> table, int section, Format format, long key) {
+        long hash = (key + System.identityHashCode(format) + ((long) section << 40)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (table.length() - 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * An immutable entry in the table.
+     */
+    protected static final class Entry {
+        /**
+         * Constructor.
+         *
+         * @param section the slot of the section in the HUD schema.
+         * @param format the section format.
+         * @param key the encoded inputs of the section.
+         * @param text the rendered text.
+         */
+        Entry(int section, Format format, long key, String text) {
+            this.section = section;
+            this.format = format;
+            this.key = key;
+            this.text = text;
+        }
+
+        /**
+         * The slot of the section in the HUD schema.
+         */
+        final int section;
+
+        /**
+         * The section format.
+         */
+        final Format format;
+
+        /**
+         * The encoded inputs of the section.
+         */
+        final long key;
+
+        /**
+         * The rendered text.
+         */
+        final String text;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The maximum number of slots in the table.
+     */
+    static final int MAX_CAPACITY = 1 << 20;
+
+    /**
+     * The table of entries, replaced when the capacity is set.
+     */
+    protected volatile AtomicReferenceArray<Entry> _table;
+
+    /**
+     * Number of lookups that found text, indexed by section.
+     */
+    protected final LongAdder[] _hits;
+
+    /**
+     * Number of lookups that had to render text, indexed by section.
+     */
+    protected final LongAdder[] _misses;
+} // class SectionMemo
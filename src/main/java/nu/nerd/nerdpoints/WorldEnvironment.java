@@ -0,0 +1,336 @@
+package nu.nerd.nerdpoints;
+
+import java.util.HashMap;
+
+import org.bukkit.World;
+
+import nu.nerd.nerdpoints.format.Format;
+import nu.nerd.nerdpoints.format.IntTextSupplier;
+import nu.nerd.nerdpoints.format.LongTextSupplier;
+import nu.nerd.nerdpoints.format.NumberText;
+import nu.nerd.nerdpoints.format.Scope;
+import nu.nerd.nerdpoints.format.ScopeSchema;
+import nu.nerd.nerdpoints.format.TextSupplier;
+
+// ----------------------------------------------------------------------------
+/**
+ * The state of a world shown in the time section of the HUD: the time of
+ * day, the phase of the moon and the weather. Also holds the world's
+ * {@link ChunkSampler}.
+ *
+ * The state is captured at most once per tick, on the main thread, and shared
+ * by all players in the world. The time section is likewise rendered once per
+ * tick for each distinct time format in use, rather than once per player.
+ *
+ * All methods must be called from the main thread.
+ */
+public class WorldEnvironment {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param world the world.
+     */
+    public WorldEnvironment(World world) {
+        _world = world;
+        _chunkSampler = new ChunkSampler(world);
+
+        // A Minecraft day is 24000 ticks, an hour 1000.
+        _timeScope.set("ampm",
+                       new TextSupplier<String>(
+                           () -> ((_fullTime + TIME_OFFSET) % 24000 < 12000) ? "a.m." : "p.m.",
+                           s -> s));
+        _timeScope.set("AMPM",
+                       new TextSupplier<String>(
+                           () -> ((_fullTime + TIME_OFFSET) % 24000 < 12000) ? "A.M." : "P.M.",
+                           s -> s));
+        _timeScope.set("h",
+                       new LongTextSupplier(
+                           () -> ((_fullTime + TIME_OFFSET) / 1000 + 11) % 12 + 1,
+                           NumberText::spacePad2));
+        _timeScope.set("hh",
+                       new LongTextSupplier(
+                           () -> ((_fullTime + TIME_OFFSET) / 1000 + 11) % 12 + 1,
+                           NumberText::zeroPad2));
+        _timeScope.set("H",
+                       new LongTextSupplier(
+                           () -> ((_fullTime + TIME_OFFSET) / 1000) % 24,
+                           NumberText::spacePad2));
+        _timeScope.set("HH",
+                       new LongTextSupplier(
+                           () -> ((_fullTime + TIME_OFFSET) / 1000) % 24,
+                           NumberText::zeroPad2));
+        _timeScope.set("mm",
+                       new LongTextSupplier(
+                           () -> ((_fullTime + TIME_OFFSET) % 1000) * 60 / 1000 % 60,
+                           NumberText::zeroPad2));
+        _timeScope.set("orb",
+                       new TextSupplier<String>(
+                           () -> {
+                               long time = (_fullTime % 24000);
+                               return (time >= TIME_SUNRISE || time < TIME_MOONRISE) ? "☼" : "☾";
+                           },
+                           s -> s));
+        _timeScope.set("updown",
+                       new TextSupplier<String>(
+                           () -> {
+                               long time = (_fullTime % 24000);
+                               if ((time >= TIME_SUNRISE || time < TIME_DAY) ||
+                                   (time >= TIME_MOONRISE && time < TIME_NIGHT)) {
+                                   return "↑";
+                               } else if ((time >= TIME_SUNSET && time < TIME_MOONRISE) ||
+                                          (time >= TIME_MOONSET && time < TIME_SUNRISE)) {
+                                   return "↓";
+                               } else {
+                                   return " ";
+                               }
+                           },
+                           s -> s));
+        _timeScope.set("moon",
+                       new IntTextSupplier(
+                           () -> (int) ((_fullTime / 24000) % 8),
+                           i -> MOON_PHASES[i]));
+        _timeScope.set("weather",
+                       new TextSupplier<String>(
+                           () -> _thundering ? "thunder" : (_storm ? "rain" : "clear"),
+                           s -> s));
+        _timeScope.set("until-night",
+                       new LongTextSupplier(
+                           () -> getTicksUntil(TIME_NIGHT) / 20,
+                           WorldEnvironment::formatSeconds));
+        _timeScope.set("until-day",
+                       new LongTextSupplier(
+                           () -> getTicksUntil(TIME_DAY) / 20,
+                           WorldEnvironment::formatSeconds));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Capture the state of the world, unless it has already been captured in
+     * the specified tick.
+     *
+     * @param tick the current tick number.
+     */
+    public void update(long tick) {
+        if (tick == _tick) {
+            return;
+        }
+        _tick = tick;
+        _fullTime = _world.getFullTime();
+        _storm = _world.hasStorm();
+        _thundering = _world.isThundering();
+        _chunkSampler.startTick();
+
+        // Discard texts of formats that have fallen out of use.
+        if (_timeTexts.size() > MAX_TIME_TEXTS) {
+            _timeTexts.clear();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the world.
+     *
+     * @return the world.
+     */
+    public World getWorld() {
+        return _world;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the sampler of biome and light levels in this world.
+     *
+     * @return the {@link ChunkSampler}.
+     */
+    public ChunkSampler getChunkSampler() {
+        return _chunkSampler;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the time section of the HUD, expanded according to the specified
+     * format.
+     *
+     * The text is rendered at most once per tick per format. If it is
+     * unchanged since the previous tick, the same String instance is returned.
+     * When hud.update.zero-allocation is enabled, the text is expanded into a
+     * reusable buffer and a String is only created when the text changes.
+     *
+     * @param format the time format.
+     * @return the expanded text.
+     */
+    public String getTimeText(Format format) {
+        TimeText timeText = _timeTexts.get(format);
+        if (timeText == null) {
+            timeText = new TimeText();
+            _timeTexts.put(format, timeText);
+        }
+
+        if (timeText.tick != _tick) {
+            timeText.tick = _tick;
+            if (NerdPoints.CONFIG.HUD_UPDATE_ZERO_ALLOCATION) {
+                _timeBuffer.setLength(0);
+                format.expand(_timeScope, _timeBuffer);
+                if (timeText.text == null || !timeText.text.contentEquals(_timeBuffer)) {
+                    timeText.text = _timeBuffer.toString();
+                }
+            } else {
+                String text = format.expand(_timeScope);
+                if (!text.equals(timeText.text)) {
+                    timeText.text = text;
+                }
+            }
+        }
+        return timeText.text;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of ticks from now until the specified time of day
+     * next occurs.
+     *
+     * @param timeOfDay the time of day, in [0, 24000).
+     * @return the number of ticks, in [0, 24000).
+     */
+    protected long getTicksUntil(long timeOfDay) {
+        return Math.floorMod(timeOfDay - _fullTime, 24000L);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Format a number of seconds as minutes and seconds, e.g. "4:05".
+     *
+     * @param seconds the number of seconds.
+     * @return the formatted duration.
+     */
+    protected static String formatSeconds(long seconds) {
+        return (seconds / 60) + ":" + NumberText.zeroPad2(seconds % 60);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The time section text rendered for one format.
+     */
+    protected static class TimeText {
+        /**
+         * The tick in which the text was last rendered.
+         */
+        long tick = -1;
+
+        /**
+         * The text.
+         */
+        String text;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Number of ticks added to the world's full time to make it so that the
+     * resultant sum modulo 24000 is the current (24 hour clock) hour times
+     * 1000.
+     */
+    static final long TIME_OFFSET = 6000;
+
+    /**
+     * Start of sunset. (17:37)
+     *
+     * The cycle is TIME_MOONSET -> TIME_SUNRISE -> TIME_DAY -> TIME_SUNSET ->
+     * TIME_MOONRISE -> TIME_NIGHT.
+     *
+     * Times from https://minecraft.gamepedia.com/Day-night_cycle.
+     */
+    static final long TIME_SUNSET = 11617;
+
+    /**
+     * Time at which beds become usable. Wiki inaccurate. (18:33, empirically)
+     */
+    static final long TIME_MOONRISE = 12550;
+
+    /**
+     * First tick when monsters spawn outdoors, in clear weather. (19:11)
+     */
+    static final long TIME_NIGHT = 13183;
+
+    /**
+     * Time at which the moon begins setting (not on wiki, arbitrarily 03:30)
+     */
+    static final long TIME_MOONSET = 21500;
+
+    /**
+     * Sunrise begins. The horizon starts to brighten. (04:33)
+     */
+    static final long TIME_SUNRISE = 22550;
+
+    /**
+     * Time when sunrise ends. (06:27)
+     */
+    static final long TIME_DAY = 450;
+
+    /**
+     * Names of the phases of the moon shown when formatting %moon%, indexed
+     * by day number modulo 8.
+     */
+    static final String[] MOON_PHASES = {
+        "full", "waning gibbous", "last quarter", "waning crescent",
+        "new", "waxing crescent", "first quarter", "waxing gibbous"
+    };
+
+    /**
+     * Variables of the time format.
+     */
+    static final ScopeSchema TIME_SCHEMA = new ScopeSchema("ampm", "AMPM", "h", "hh", "H", "HH", "mm", "orb", "updown",
+                                                           "moon", "weather", "until-night", "until-day");
+
+    /**
+     * The maximum number of distinct time formats whose text is retained
+     * between ticks.
+     */
+    static final int MAX_TIME_TEXTS = 64;
+
+    /**
+     * The world.
+     */
+    protected final World _world;
+
+    /**
+     * The sampler of biome and light levels.
+     */
+    protected final ChunkSampler _chunkSampler;
+
+    /**
+     * Scope containing time variables.
+     */
+    protected final Scope _timeScope = new Scope(TIME_SCHEMA);
+
+    /**
+     * Map from time format to the text it was last expanded to.
+     */
+    protected final HashMap<Format, TimeText> _timeTexts = new HashMap<>();
+
+    /**
+     * Buffer into which time formats are expanded when
+     * hud.update.zero-allocation is enabled.
+     */
+    protected final StringBuilder _timeBuffer = new StringBuilder();
+
+    /**
+     * The tick in which the world state was last captured.
+     */
+    protected long _tick = -1;
+
+    /**
+     * The full time (ticks) in the world.
+     */
+    protected long _fullTime;
+
+    /**
+     * True if it is raining (or snowing) in the world.
+     */
+    protected boolean _storm;
+
+    /**
+     * True if it is thundering in the world.
+     */
+    protected boolean _thundering;
+} // class WorldEnvironment
@@ -3,6 +3,7 @@ package nu.nerd.nerdpoints.commands;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -11,6 +12,7 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import nu.nerd.nerdpoints.Configuration;
 import nu.nerd.nerdpoints.FormatSetting;
 import nu.nerd.nerdpoints.NerdPoints;
 import nu.nerd.nerdpoints.PlayerSetting;
@@ -27,7 +29,7 @@ public class HudExecutor extends ExecutorBase {
      * Default constructor.
      */
     public HudExecutor() {
-        super("hud", "help", "on", "off", "format", "biome", "chunk", "compass", "coords", "light", "time");
+        super("hud", "help", "on", "off", "format", "preset", "biome", "chunk", "compass", "coords", "light", "time");
     }
 
     // ------------------------------------------------------------------------
@@ -46,11 +48,13 @@ public class HudExecutor extends ExecutorBase {
         }
         Player player = (Player) sender;
         PlayerState state = NerdPoints.PLUGIN.getState(player);
+        // Settings may be about to change. Recompute the HUD on its next update.
+        state.invalidateHUD();
 
         if (args.length == 0) {
             onHudCommand(sender, "Head Up Display",
                          ChatColor.GOLD + " Run " + ChatColor.YELLOW + "/hud help" + ChatColor.GOLD + " for help.",
-                         state.hudVisible, state.hudFormat);
+                         state.hudVisible, null, state.hudFormat);
             return true;
         }
 
@@ -59,36 +63,39 @@ public class HudExecutor extends ExecutorBase {
                 args[0].equalsIgnoreCase("off") ||
                 args[0].equalsIgnoreCase("format")) {
                 onHudCommand(sender, "Head Up Display", "",
-                             state.hudVisible, state.hudFormat, args);
+                             state.hudVisible, null, state.hudFormat, args);
+                return true;
+            } else if (args[0].equalsIgnoreCase("preset")) {
+                onPresetCommand(sender, "Head Up Display", state.hudFormat, NerdPoints.CONFIG.HUD_PRESETS, args);
                 return true;
             } else if (args[0].equalsIgnoreCase("biome")) {
                 onHudCommand(sender, "Biome HUD section", "",
-                             state.biomeVisible, state.biomeFormat,
+                             state.biomeVisible, state.biomeTicks, state.biomeFormat,
                              Arrays.copyOfRange(args, 1, args.length));
                 return true;
             } else if (args[0].equalsIgnoreCase("chunk")) {
                 onHudCommand(sender, "Chunk HUD section", "",
-                             state.chunkVisible, state.chunkFormat,
+                             state.chunkVisible, state.chunkTicks, state.chunkFormat,
                              Arrays.copyOfRange(args, 1, args.length));
                 return true;
             } else if (args[0].equalsIgnoreCase("compass")) {
                 onHudCommand(sender, "Compass HUD section", "",
-                             state.compassVisible, state.compassFormat,
+                             state.compassVisible, state.compassTicks, state.compassFormat,
                              Arrays.copyOfRange(args, 1, args.length));
                 return true;
             } else if (args[0].equalsIgnoreCase("coords")) {
                 onHudCommand(sender, "Coords HUD section", "",
-                             state.coordsVisible, state.coordsFormat,
+                             state.coordsVisible, state.coordsTicks, state.coordsFormat,
                              Arrays.copyOfRange(args, 1, args.length));
                 return true;
             } else if (args[0].equalsIgnoreCase("light")) {
                 onHudCommand(sender, "Light HUD section", "",
-                             state.lightVisible, state.lightFormat,
+                             state.lightVisible, state.lightTicks, state.lightFormat,
                              Arrays.copyOfRange(args, 1, args.length));
                 return true;
             } else if (args[0].equalsIgnoreCase("time")) {
                 onHudCommand(sender, "Time HUD section", "",
-                             state.timeVisible, state.timeFormat,
+                             state.timeVisible, state.timeTicks, state.timeFormat,
                              Arrays.copyOfRange(args, 1, args.length));
                 return true;
             }
@@ -110,6 +117,10 @@ public class HudExecutor extends ExecutorBase {
 
             if (args.length == 2 && args[0].equalsIgnoreCase("format")) {
                 return getFormatTabCompletions(state.hudFormat, args[1]);
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("preset")) {
+                return NerdPoints.CONFIG.HUD_PRESETS.keySet().stream()
+                .filter(s -> s.startsWith(args[1].toLowerCase()))
+                .collect(Collectors.toList());
             } else if (args.length >= 2) {
                 // formatSetting != null => args[0] == valid section type.
                 FormatSetting formatSetting = null;
@@ -136,11 +147,15 @@ public class HudExecutor extends ExecutorBase {
                 }
 
                 if (args.length == 2) {
-                    return Stream.of("on", "off", "format")
+                    return Stream.of("on", "off", "format", "ticks")
                     .filter(s -> s.startsWith(args[1]))
                     .collect(Collectors.toList());
                 } else if (args.length == 3 && formatSetting != null && args[1].equalsIgnoreCase("format")) {
                     return getFormatTabCompletions(formatSetting, args[2]);
+                } else if (args.length == 3 && formatSetting != null && args[1].equalsIgnoreCase("ticks")) {
+                    return Stream.of("default")
+                    .filter(s -> s.startsWith(args[2]))
+                    .collect(Collectors.toList());
                 }
             }
         }
@@ -180,14 +195,17 @@ public class HudExecutor extends ExecutorBase {
      * @param toggleSuffix a suffix appended to the HUD visibility toggle
      *        message only.
      * @param visibilitySetting the affected visibility setting.
+     * @param ticksSetting the affected refresh interval setting, or null if
+     *        there is none.
      * @param formatSetting the affected format setting.
      * @param args command arguments after the subcommand is known (always
-     *        beginning "on", "off" or "format" for valid commands).
+     *        beginning "on", "off", "format" or "ticks" for valid commands).
      */
     protected void onHudCommand(CommandSender sender,
                                 String description,
                                 String toggleSuffix,
                                 PlayerSetting<Boolean> visibilitySetting,
+                                PlayerSetting<Integer> ticksSetting,
                                 FormatSetting formatSetting,
                                 String... args) {
         if (args.length == 0) {
@@ -214,11 +232,92 @@ public class HudExecutor extends ExecutorBase {
             if (format.equalsIgnoreCase("default")) {
                 format = formatSetting.getDefault().toString();
             }
-            formatSetting.set(new Format(format));
+            formatSetting.set(Format.intern(format));
             sender.sendMessage(ChatColor.GOLD + description + " new format: " + formatSetting.get());
             return;
         }
 
+        if (ticksSetting != null && args.length >= 1 && args[0].equalsIgnoreCase("ticks")) {
+            onTicksCommand(sender, description, ticksSetting, args);
+            return;
+        }
+
         sender.sendMessage(ChatColor.RED + "Invalid arguments. Try /hud help.");
     }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Handle "ticks [default|<ticks>]" commands: show or set the refresh
+     * interval of a HUD section.
+     *
+     * @param sender the CommandSender.
+     * @param description a description of the affected setting, formatted into
+     *        messages.
+     * @param ticksSetting the affected refresh interval setting.
+     * @param args command arguments, beginning "ticks".
+     */
+    protected void onTicksCommand(CommandSender sender,
+                                  String description,
+                                  PlayerSetting<Integer> ticksSetting,
+                                  String... args) {
+        if (args.length == 1) {
+            sender.sendMessage(ChatColor.GOLD + description + " refresh interval: " + ticksSetting.get() + " ticks");
+        } else if (args.length == 2) {
+            if (args[1].equalsIgnoreCase("default")) {
+                ticksSetting.set(null);
+            } else {
+                try {
+                    int ticks = Integer.parseInt(args[1]);
+                    if (ticks < 1 || ticks > Configuration.MAX_SECTION_TICKS) {
+                        sender.sendMessage(ChatColor.RED + "The refresh interval must be between 1 and " +
+                                           Configuration.MAX_SECTION_TICKS + " ticks.");
+                        return;
+                    }
+                    ticksSetting.set(ticks);
+                } catch (NumberFormatException ex) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number of ticks: " + args[1]);
+                    return;
+                }
+            }
+            sender.sendMessage(ChatColor.GOLD + description + " refresh interval: " + ticksSetting.get() + " ticks");
+        } else {
+            sender.sendMessage(ChatColor.RED + "Invalid arguments. Try /hud help.");
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Handle "preset [<name>]" commands: list the presets, or select
+     * one as the new format.
+     *
+     * @param sender the CommandSender.
+     * @param description a description of the affected setting, formatted into
+     *        messages.
+     * @param formatSetting the affected format setting.
+     * @param presets the named formats that can be selected.
+     * @param args command arguments, beginning "preset".
+     */
+    protected void onPresetCommand(CommandSender sender,
+                                   String description,
+                                   FormatSetting formatSetting,
+                                   Map<String, Format> presets,
+                                   String... args) {
+        if (presets.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + description + " has no presets.");
+        } else if (args.length == 1) {
+            sender.sendMessage(ChatColor.GOLD + description + " presets: " +
+                               ChatColor.YELLOW + String.join(", ", presets.keySet()));
+        } else if (args.length == 2) {
+            Format preset = presets.get(args[1].toLowerCase());
+            if (preset == null) {
+                sender.sendMessage(ChatColor.RED + "Unknown preset: " + args[1]);
+            } else {
+                sender.sendMessage(ChatColor.GOLD + description + " old format: " + formatSetting.get());
+                formatSetting.set(preset);
+                sender.sendMessage(ChatColor.GOLD + description + " new format: " + formatSetting.get());
+            }
+        } else {
+            sender.sendMessage(ChatColor.RED + "Invalid arguments. Try /hud help.");
+        }
+    }
 } // class HudExecutor
\ No newline at end of file
@@ -1,10 +1,21 @@
 package nu.nerd.nerdpoints.commands;
 
+import java.util.Arrays;
+
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
 import net.md_5.bungee.api.ChatColor;
+import nu.nerd.nerdpoints.ChunkSampler;
+import nu.nerd.nerdpoints.ComponentCache;
+import nu.nerd.nerdpoints.FrameStats;
+import nu.nerd.nerdpoints.HudGovernor;
+import nu.nerd.nerdpoints.HudScheduler;
 import nu.nerd.nerdpoints.NerdPoints;
+import nu.nerd.nerdpoints.RenderPlanner;
+import nu.nerd.nerdpoints.SectionMemo;
+import nu.nerd.nerdpoints.WorldEnvironment;
+import nu.nerd.nerdpoints.format.Format;
 
 // ----------------------------------------------------------------------------
 /**
@@ -16,7 +27,7 @@ public class NerdPointsExecutor extends ExecutorBase {
      * Default constructor.
      */
     public NerdPointsExecutor() {
-        super("nerdpoints", "help", "reload");
+        super("nerdpoints", "help", "reload", "stats");
     }
 
     // ------------------------------------------------------------------------
@@ -30,8 +41,95 @@ public class NerdPointsExecutor extends ExecutorBase {
             return false;
         }
 
-        NerdPoints.CONFIG.reload(true);
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+            showStats(sender);
+            return true;
+        }
+
+        NerdPoints.PLUGIN.reloadConfiguration();
         sender.sendMessage(ChatColor.GOLD + NerdPoints.PLUGIN.getName() + " configuration reloaded.");
         return true;
     }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Show HUD performance statistics.
+     * 
+     * @param sender the command sender.
+     */
+    protected void showStats(CommandSender sender) {
+        ComponentCache cache = NerdPoints.PLUGIN.getComponentCache();
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        long lookups = hits + misses;
+        sender.sendMessage(ChatColor.GOLD + "Component cache: " + ChatColor.YELLOW + cache.size() +
+                           ChatColor.GOLD + " entries, " + ChatColor.YELLOW + hits +
+                           ChatColor.GOLD + " hits, " + ChatColor.YELLOW + misses +
+                           ChatColor.GOLD + " misses (" + ChatColor.YELLOW + percent(hits, lookups) +
+                           ChatColor.GOLD + " hit rate).");
+        HudScheduler scheduler = NerdPoints.PLUGIN.getHudScheduler();
+        sender.sendMessage(ChatColor.GOLD + "HUD update period: " + ChatColor.YELLOW + scheduler.getPeriod() +
+                           ChatColor.GOLD + " ticks; players per tick: " + ChatColor.YELLOW +
+                           Arrays.toString(scheduler.getShardSizes()));
+        sender.sendMessage(ChatColor.GOLD + "HUD executor: " + ChatColor.YELLOW + NerdPoints.PLUGIN.getRenderPool());
+        RenderPlanner planner = NerdPoints.PLUGIN.getRenderPlanner();
+        String mode = NerdPoints.CONFIG.HUD_UPDATE_ADAPTIVE ? "auto"
+                                                            : NerdPoints.CONFIG.HUD_UPDATE_PARALLEL ? "parallel" : "inline";
+        String last = planner.isParallel() ? "parallel in " + planner.getLastBatches() + " batches" : "inline";
+        sender.sendMessage(ChatColor.GOLD + "HUD rendering (" + mode + "): last tick " + ChatColor.YELLOW + last +
+                           ChatColor.GOLD + " for " + ChatColor.YELLOW + planner.getLastCount() +
+                           ChatColor.GOLD + " players; " + ChatColor.YELLOW + planner.getParallelTicks() +
+                           ChatColor.GOLD + " parallel, " + ChatColor.YELLOW + planner.getInlineTicks() +
+                           ChatColor.GOLD + " inline ticks.");
+        FrameStats frames = NerdPoints.PLUGIN.getFrameStats();
+        sender.sendMessage(ChatColor.GOLD + "HUD frames skipped: " + ChatColor.YELLOW + frames.getLastSkipped() +
+                           ChatColor.GOLD + " last tick, " + ChatColor.YELLOW + frames.getMaxSkipped() +
+                           ChatColor.GOLD + " max per tick, " + ChatColor.YELLOW + frames.getTotalSkipped() +
+                           ChatColor.GOLD + " total; late: " + ChatColor.YELLOW + frames.getLastLate() +
+                           ChatColor.GOLD + " last tick, " + ChatColor.YELLOW + frames.getMaxLate() +
+                           ChatColor.GOLD + " max per tick, " + ChatColor.YELLOW + frames.getTotalLate() +
+                           ChatColor.GOLD + " total.");
+        sender.sendMessage(ChatColor.GOLD + "HUD costs: " + ChatColor.YELLOW +
+                           String.format("%.1f", planner.getRenderNanos() / 1000) + ChatColor.GOLD +
+                           " µs render per player, " + ChatColor.YELLOW +
+                           String.format("%.1f", planner.getHandoffNanos() / 1000) + ChatColor.GOLD +
+                           " µs hand-off.");
+        HudGovernor governor = NerdPoints.PLUGIN.getHudGovernor();
+        sender.sendMessage(ChatColor.GOLD + "HUD governor: stage " + ChatColor.YELLOW + governor.getStage() +
+                           ChatColor.GOLD + " (" + ChatColor.YELLOW + HudGovernor.STAGE_NAMES[governor.getStage()] +
+                           ChatColor.GOLD + ") at " + ChatColor.YELLOW + String.format("%.1f", governor.getMspt()) +
+                           ChatColor.GOLD + " MSPT, from " + governor.getSource() +
+                           (NerdPoints.CONFIG.HUD_GOVERNOR_ENABLED ? "." : "; disabled."));
+        sender.sendMessage(ChatColor.GOLD + "Interned formats: " + ChatColor.YELLOW + Format.getInternedCount());
+        SectionMemo memo = NerdPoints.PLUGIN.getSectionMemo();
+        for (int section = 0; section < memo.getSections().size(); ++section) {
+            long sectionHits = memo.getHits(section);
+            long sectionMisses = memo.getMisses(section);
+            if (sectionHits + sectionMisses != 0) {
+                sender.sendMessage(ChatColor.GOLD + "Section memo (" + memo.getSections().getName(section) + "): " +
+                                   ChatColor.YELLOW + sectionHits + ChatColor.GOLD + " hits, " +
+                                   ChatColor.YELLOW + sectionMisses + ChatColor.GOLD + " misses (" +
+                                   ChatColor.YELLOW + percent(sectionHits, sectionHits + sectionMisses) +
+                                   ChatColor.GOLD + " hit rate).");
+            }
+        }
+        for (WorldEnvironment environment : NerdPoints.PLUGIN.getWorldEnvironments()) {
+            ChunkSampler sampler = environment.getChunkSampler();
+            sender.sendMessage(ChatColor.GOLD + "Chunk snapshots in " + environment.getWorld().getName() + ": " +
+                               ChatColor.YELLOW + sampler.size() + ChatColor.GOLD + " retained, " +
+                               ChatColor.YELLOW + sampler.getSnapshotCount() + ChatColor.GOLD + " taken.");
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Format a ratio as a percentage with one decimal place.
+     * 
+     * @param numerator the numerator.
+     * @param denominator the denominator.
+     * @return the percentage, or "-" if the denominator is zero.
+     */
+    protected static String percent(long numerator, long denominator) {
+        return (denominator == 0) ? "-" : String.format("%.1f%%", 100.0 * numerator / denominator);
+    }
 } // class NerdPointsExecutor
\ No newline at end of file
@@ -0,0 +1,216 @@
+package nu.nerd.nerdpoints.format;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link Format} bound to a {@link ScopeSchema}.
+ *
+ * The Format's segments are reduced to a flat program: each entry is either
+ * the slot index of a variable (non-negative) or the bitwise complement of an
+ * index into an array of literal strings (negative). References to variables
+ * that are not in the schema are resolved to literal "%name%" text at compile
+ * time and adjacent literals are merged.
+ */
+public class CompiledFormat {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param schema the schema of Scopes that this program will be expanded
+     *        in.
+     * @param segments the parsed segments of the Format.
+     */
+    CompiledFormat(ScopeSchema schema, List<Segment> segments) {
+        _schema = schema;
+        for (Segment segment : segments) {
+            segment.compile(this);
+        }
+        endLiteral();
+
+        _program = new int[_ops.size()];
+        for (int i = 0; i < _program.length; ++i) {
+            _program[i] = _ops.get(i);
+        }
+        _literals = _literalList.toArray(new String[_literalList.size()]);
+        _ops = null;
+        _literalList = null;
+        _pending = null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the schema that this program was compiled against.
+     *
+     * @return the schema that this program was compiled against.
+     */
+    public ScopeSchema getSchema() {
+        return _schema;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the variables in the specified Scope into this program to produce
+     * a String.
+     *
+     * @param scope the Scope, which must have the schema that this program was
+     *        compiled against.
+     * @return the expanded text.
+     * @throws IllegalArgumentException if the Scope has a different schema.
+     */
+    public String expand(Scope scope) {
+        StringBuilder builder = new StringBuilder(_capacityHint);
+        expand(scope, builder);
+        return builder.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the variables in the specified Scope into this program, appending
+     * the result to a StringBuilder.
+     *
+     * @param scope the Scope, which must have the schema that this program was
+     *        compiled against.
+     * @param builder the destination of the expanded text.
+     * @throws IllegalArgumentException if the Scope has a different schema.
+     */
+    public void expand(Scope scope, StringBuilder builder) {
+        if (scope.getSchema() != _schema) {
+            throw new IllegalArgumentException("scope schema does not match the compiled format");
+        }
+        for (int op : _program) {
+            if (op >= 0) {
+                scope.appendText(op, builder);
+            } else {
+                builder.append(_literals[~op]);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the variables in the specified Scope into this program, appending
+     * the result to a StringBuilder without exceeding a length limit.
+     *
+     * Expansion stops as soon as the limit is reached. Truncation never
+     * leaves half of a colour code at the end of the text.
+     *
+     * @param scope the Scope, which must have the schema that this program was
+     *        compiled against.
+     * @param builder the destination of the expanded text.
+     * @param maxLength the maximum length of the builder's contents.
+     * @return true if the text was truncated.
+     * @throws IllegalArgumentException if the Scope has a different schema.
+     */
+    public boolean expand(Scope scope, StringBuilder builder, int maxLength) {
+        if (scope.getSchema() != _schema) {
+            throw new IllegalArgumentException("scope schema does not match the compiled format");
+        }
+        for (int op : _program) {
+            // Values are appended in place, then the excess trimmed off, so
+            // that no substrings are created.
+            int start = builder.length();
+            if (op >= 0) {
+                scope.appendText(op, builder);
+            } else {
+                builder.append(_literals[~op]);
+            }
+            if (builder.length() > maxLength) {
+                builder.setLength(Math.max(maxLength, start));
+                int last = builder.length() - 1;
+                if (last >= 0 && builder.charAt(last) == Format.COLOUR_CHAR) {
+                    builder.setLength(last);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append literal text to the program being compiled.
+     *
+     * Consecutive literals are merged into one.
+     *
+     * @param text the literal text.
+     */
+    void appendLiteral(String text) {
+        _pending.append(text);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append a variable reference to the program being compiled.
+     *
+     * @param name the variable name; if not in the schema, the reference is
+     *        compiled as the literal text "%name%".
+     */
+    void appendVariable(String name) {
+        int slot = _schema.getSlot(name);
+        if (slot < 0) {
+            _pending.append('%').append(name).append('%');
+        } else {
+            endLiteral();
+            _ops.add(slot);
+            _capacityHint += VARIABLE_LENGTH_HINT;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add any pending literal text to the program being compiled.
+     */
+    private void endLiteral() {
+        if (_pending.length() > 0) {
+            _ops.add(~_literalList.size());
+            _literalList.add(_pending.toString());
+            _capacityHint += _pending.length();
+            _pending.setLength(0);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expected length of the text of a typical variable, used to size the
+     * StringBuilder in {@link #expand(Scope)}.
+     */
+    private static final int VARIABLE_LENGTH_HINT = 8;
+
+    /**
+     * The schema that this program was compiled against.
+     */
+    protected final ScopeSchema _schema;
+
+    /**
+     * The program: slot indices (non-negative) and complemented literal
+     * indices (negative).
+     */
+    protected final int[] _program;
+
+    /**
+     * Literal strings referenced by the program.
+     */
+    protected final String[] _literals;
+
+    /**
+     * Initial capacity of the StringBuilder used to expand this program.
+     */
+    protected int _capacityHint;
+
+    /**
+     * Program entries accumulated during compilation.
+     */
+    private ArrayList<Integer> _ops = new ArrayList<>();
+
+    /**
+     * Literals accumulated during compilation.
+     */
+    private ArrayList<String> _literalList = new ArrayList<>();
+
+    /**
+     * Literal text not yet added to the program during compilation.
+     */
+    private StringBuilder _pending = new StringBuilder();
+} // class CompiledFormat
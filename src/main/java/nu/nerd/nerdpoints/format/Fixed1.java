@@ -33,17 +33,10 @@ public class Fixed1 {
     // ------------------------------------------------------------------------
     /**
      * @see Object#toString()
-     * 
-     *      The returned String is padded with leading spaces to ensure the
-     *      minimum length specified at construction time.
      */
     @Override
     public String toString() {
-        _builder.setLength(0);
-        _builder.append(_value / 10);
-        _builder.append('.');
-        _builder.append(Math.abs(_value) % 10);
-        return _builder.toString();
+        return NumberText.fixed1(_value);
     }
 
     // ------------------------------------------------------------------------
@@ -54,16 +47,7 @@ public class Fixed1 {
      * @param minLength the minimum length of the returned String.
      */
     public String toString(int minLength) {
-        _builder.setLength(0);
-        // Set up leading spaces to trim to width with substring().
-        _builder.append(_value / 10);
-        _builder.append('.');
-        _builder.append(Math.abs(_value) % 10);
-        if (_builder.length() < minLength) {
-            int paddingLength = minLength - _builder.length();
-            _builder.insert(0, PADDING.substring(PADDING.length() - paddingLength));
-        }
-        return _builder.toString();
+        return NumberText.padLeft(NumberText.fixed1(_value), minLength);
     }
 
     // --------------------------------------------------------------------------
@@ -101,18 +85,8 @@ public class Fixed1 {
     }
 
     // ------------------------------------------------------------------------
-    /**
-     * For padding with leading spaces; assumed to be shorter than this.
-     */
-    private static final String PADDING = "                                 ";
-
     /**
      * The fixed point value, computed as 10x the real number, rounded.
      */
-    protected int _value;
-
-    /**
-     * Used to format strings.
-     */
-    protected StringBuilder _builder = new StringBuilder();
+    protected final int _value;
 } // class Fixed1
\ No newline at end of file
@@ -0,0 +1,68 @@
+package nu.nerd.nerdpoints.format;
+
+import java.util.function.DoubleSupplier;
+
+// ----------------------------------------------------------------------------
+/**
+ * A primitive counterpart of {@link TextSupplier} for real numbers formatted to one decimal place.
+ * 
+ * The value is rounded to a fixed point integer that is 10x the real number,
+ * and compared as a primitive, so that the text is only reformatted when the
+ * displayed digits change, and checking for a change does not allocate. The
+ * value can also be appended to a StringBuilder without creating a String.
+ */
+public class FixedTextSupplier extends PrimitiveTextSupplier {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param getter the function that should be called to get the current value
+     *        to format.
+     */
+    public FixedTextSupplier(DoubleSupplier getter) {
+        _getter = getter;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.PrimitiveTextSupplier#fetch()
+     */
+    @Override
+    protected boolean fetch() {
+        int newValue = (int) Math.round(10 * _getter.getAsDouble());
+        boolean changed = (_value != newValue);
+        _value = newValue;
+        return changed;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.PrimitiveTextSupplier#format()
+     */
+    @Override
+    protected String format() {
+        return NumberText.fixed1(_value);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.PrimitiveTextSupplier#appendValue(java.lang.StringBuilder)
+     */
+    @Override
+    protected boolean appendValue(StringBuilder builder) {
+        NumberText.appendFixed1(builder, (int) Math.round(10 * _getter.getAsDouble()));
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The fixed point value, 10x the real number, used to generate the most
+     * recently formatted text.
+     */
+    protected int _value;
+
+    /**
+     * The function that should be called to get the current value to format.
+     */
+    protected final DoubleSupplier _getter;
+} // class FixedTextSupplier
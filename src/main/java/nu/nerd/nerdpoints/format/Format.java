@@ -1,8 +1,11 @@
 package nu.nerd.nerdpoints.format;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 // ----------------------------------------------------------------------------
@@ -12,10 +15,52 @@ import java.util.stream.Collectors;
  * Format strings are pre-parsed into a sequence of {@link Segment}s.
  */
 public class Format {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the shared Format instance for the specified format specifier.
+     * 
+     * Formats are immutable, so players who use the same format specifier can
+     * share a single parsed and compiled instance. The cache only holds weak
+     * references: a Format is evicted when it is no longer referenced by any
+     * player or configuration setting.
+     * 
+     * @param format the format specifier.
+     * @return the shared Format.
+     */
+    public static Format intern(String format) {
+        synchronized (INTERNED) {
+            WeakReference<Format> ref = INTERNED.get(format);
+            Format result = (ref != null) ? ref.get() : null;
+            if (result == null) {
+                result = new Format(format);
+                // The key is the Format's own specifier, so the entry lives
+                // exactly as long as the Format. put() would keep the key of
+                // an entry whose Format was collected, so remove that first.
+                INTERNED.remove(format);
+                INTERNED.put(result._format, new WeakReference<>(result));
+            }
+            return result;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of distinct Formats currently interned.
+     * 
+     * @return the number of distinct Formats currently interned.
+     */
+    public static int getInternedCount() {
+        synchronized (INTERNED) {
+            return INTERNED.size();
+        }
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Constructor.
      * 
+     * Prefer {@link #intern(String)}, which shares instances.
+     * 
      * @param format the format specifier; variables are surrounded by '%' and
      *        "%%" signifies a literal '%' character.
      * @throws IllegalArgumentException if the format string has mismatched '%'
@@ -48,7 +93,7 @@ public class Format {
                         // End this literal segment; start a variable.
                         inVar = true;
                         if (segment.length() > 0) {
-                            String literal = segment.toString();
+                            String literal = translateColourCodes(segment.toString());
                             segment.setLength(0);
                             _segments.add(new StringSegment(literal));
                         }
@@ -66,10 +111,32 @@ public class Format {
         }
 
         if (segment.length() > 0) {
-            _segments.add(new StringSegment(segment.toString()));
+            _segments.add(new StringSegment(translateColourCodes(segment.toString())));
         }
     } // Format ctor
 
+    // ------------------------------------------------------------------------
+    /**
+     * Translate '&'-prefixed colour and formatting codes in literal text into
+     * the '§'-prefixed codes understood by the client.
+     * 
+     * This is done once, when the Format is parsed, rather than to the fully
+     * expanded text every time it is displayed.
+     * 
+     * @param text the literal text.
+     * @return the text with colour codes translated.
+     */
+    public static String translateColourCodes(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length - 1; ++i) {
+            if (chars[i] == '&' && COLOUR_CODES.indexOf(chars[i + 1]) >= 0) {
+                chars[i] = COLOUR_CHAR;
+                chars[i + 1] = Character.toLowerCase(chars[i + 1]);
+            }
+        }
+        return new String(chars);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Expand the variables in the specified Scope into this Format to produce a
@@ -78,11 +145,67 @@ public class Format {
      * @param scope the Scope.
      */
     public String expand(Scope scope) {
-        StringBuilder builder = new StringBuilder(2 * _format.length());
-        for (Segment segment : _segments) {
-            builder.append(segment.getText(scope));
+        return compile(scope.getSchema()).expand(scope);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the variables in the specified Scope into this Format, appending
+     * the result to a StringBuilder.
+     * 
+     * @param scope the Scope.
+     * @param builder the destination of the expanded text.
+     * @see CompiledFormat#expand(Scope, StringBuilder)
+     */
+    public void expand(Scope scope, StringBuilder builder) {
+        compile(scope.getSchema()).expand(scope, builder);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Expand the variables in the specified Scope into this Format, appending
+     * the result to a StringBuilder without exceeding a length limit.
+     * 
+     * @param scope the Scope.
+     * @param builder the destination of the expanded text.
+     * @param maxLength the maximum length of the builder's contents.
+     * @return true if the text was truncated.
+     * @see CompiledFormat#expand(Scope, StringBuilder, int)
+     */
+    public boolean expand(Scope scope, StringBuilder builder, int maxLength) {
+        return compile(scope.getSchema()).expand(scope, builder, maxLength);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return this Format compiled against the specified schema.
+     * 
+     * Compiled programs are cached, so each Format is compiled at most once
+     * per schema.
+     * 
+     * @param schema the schema of the Scopes that the result will expand.
+     * @return the compiled program.
+     */
+    public CompiledFormat compile(ScopeSchema schema) {
+        CompiledFormat[] compiled = _compiled;
+        for (CompiledFormat program : compiled) {
+            if (program.getSchema() == schema) {
+                return program;
+            }
+        }
+
+        synchronized (this) {
+            for (CompiledFormat program : _compiled) {
+                if (program.getSchema() == schema) {
+                    return program;
+                }
+            }
+            CompiledFormat program = new CompiledFormat(schema, _segments);
+            compiled = Arrays.copyOf(_compiled, _compiled.length + 1);
+            compiled[compiled.length - 1] = program;
+            _compiled = compiled;
+            return program;
         }
-        return builder.toString();
     }
 
     // ------------------------------------------------------------------------
@@ -167,6 +290,21 @@ public class Format {
     }
 
     // ------------------------------------------------------------------------
+    /**
+     * The character that introduces a colour or formatting code on the client.
+     */
+    public static final char COLOUR_CHAR = '\u00A7';
+
+    /**
+     * Characters that may follow '&' to form a colour or formatting code.
+     */
+    private static final String COLOUR_CODES = "0123456789AaBbCcDdEeFfKkLlMmNnOoRr";
+
+    /**
+     * Cache of interned Formats, keyed by format specifier.
+     */
+    private static final WeakHashMap<String, WeakReference<Format>> INTERNED = new WeakHashMap<>();
+
     /**
      * The format specifier used to instantiate this Format.
      */
@@ -183,12 +321,18 @@ public class Format {
      */
     protected Set<String> _variables = new TreeSet<>();
 
+    /**
+     * Programs compiled from this Format, at most one per schema; replaced
+     * wholesale when a new schema is compiled.
+     */
+    protected volatile CompiledFormat[] _compiled = new CompiledFormat[0];
+
     // ------------------------------------------------------------------------
     /**
      * Testing.
      */
     public static void main(String[] args) {
-        Scope scope = new Scope();
+        Scope scope = new Scope(new ScopeSchema("x"));
         new Format("").dump(scope);
         new Format("%%").dump(scope);
         new Format("%%%").dump(scope);
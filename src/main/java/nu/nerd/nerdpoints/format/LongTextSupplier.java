@@ -0,0 +1,90 @@
+package nu.nerd.nerdpoints.format;
+
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+// ----------------------------------------------------------------------------
+/**
+ * A primitive counterpart of {@link TextSupplier} for long values.
+ * 
+ * The value is fetched and compared as a primitive, so that checking whether
+ * the text has changed does not box the value. Values formatted as plain
+ * decimal numbers are appended to a StringBuilder without creating a String.
+ */
+public class LongTextSupplier extends PrimitiveTextSupplier {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor for values formatted as plain decimal numbers.
+     * 
+     * @param getter the function that should be called to get the current value
+     *        to format.
+     */
+    public LongTextSupplier(LongSupplier getter) {
+        this(getter, null);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param getter the function that should be called to get the current value
+     *        to format.
+     * @param format the function that should be called to format the value into
+     *        a String, or null to format it as a plain decimal number.
+     */
+    public LongTextSupplier(LongSupplier getter, LongFunction<String> format) {
+        _getter = getter;
+        _format = format;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.PrimitiveTextSupplier#fetch()
+     */
+    @Override
+    protected boolean fetch() {
+        long newValue = _getter.getAsLong();
+        boolean changed = (_value != newValue);
+        _value = newValue;
+        return changed;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.PrimitiveTextSupplier#format()
+     */
+    @Override
+    protected String format() {
+        return (_format != null) ? _format.apply(_value) : Long.toString(_value);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.PrimitiveTextSupplier#appendValue(java.lang.StringBuilder)
+     */
+    @Override
+    protected boolean appendValue(StringBuilder builder) {
+        if (_format != null) {
+            return false;
+        }
+        builder.append(_getter.getAsLong());
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The value used to generate the most recently formatted text.
+     */
+    protected long _value;
+
+    /**
+     * The function that should be called to get the current value to format.
+     */
+    protected final LongSupplier _getter;
+
+    /**
+     * The function that should be called to format the value into a String,
+     * or null to format it as a plain decimal number.
+     */
+    protected final LongFunction<String> _format;
+} // class LongTextSupplier
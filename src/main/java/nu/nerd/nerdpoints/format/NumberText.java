@@ -0,0 +1,202 @@
+package nu.nerd.nerdpoints.format;
+
+// ----------------------------------------------------------------------------
+/**
+ * Fast formatting of the numbers displayed in the HUD.
+ *
+ * Numbers in small, bounded domains (light levels, hours, minutes and compass
+ * headings) are looked up in tables of immutable Strings, built once. Numbers
+ * with unbounded domains (coordinates) are written as characters without
+ * going through String.format().
+ */
+public class NumberText {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the specified number padded to two characters with a leading
+     * space, as by String.format("%2d").
+     *
+     * @param value the number.
+     * @return the formatted number.
+     */
+    public static String spacePad2(long value) {
+        return (value >= 0 && value < SPACE_PAD_2.length) ? SPACE_PAD_2[(int) value] : Long.toString(value);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the specified number padded to two characters with a leading
+     * zero, as by String.format("%02d").
+     *
+     * @param value the number.
+     * @return the formatted number.
+     */
+    public static String zeroPad2(long value) {
+        return (value >= 0 && value < ZERO_PAD_2.length) ? ZERO_PAD_2[(int) value] : Long.toString(value);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the specified number padded to three characters with leading
+     * spaces, as by String.format("%3d").
+     *
+     * @param value the number.
+     * @return the formatted number.
+     */
+    public static String spacePad3(long value) {
+        return (value >= 0 && value < SPACE_PAD_3.length) ? SPACE_PAD_3[(int) value] : Long.toString(value);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a compass heading with one decimal place, padded to five
+     * characters with leading spaces.
+     *
+     * @param tenths the heading in tenths of a degree.
+     * @return the formatted heading.
+     */
+    public static String heading1(int tenths) {
+        return (tenths >= 0 && tenths < HEADING_1.length) ? HEADING_1[tenths] : padLeft(fixed1(tenths), 5);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a fixed point number with one decimal place.
+     *
+     * @param valueTimes10 the number times 10.
+     * @return the formatted number.
+     */
+    public static String fixed1(int valueTimes10) {
+        char[] chars = new char[MAX_FIXED1_LENGTH];
+        int start = writeFixed1(chars, valueTimes10);
+        return new String(chars, start, chars.length - start);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append a fixed point number with one decimal place to the specified
+     * StringBuilder.
+     *
+     * @param builder the destination.
+     * @param valueTimes10 the number times 10.
+     */
+    public static void appendFixed1(StringBuilder builder, int valueTimes10) {
+        if (valueTimes10 < 0) {
+            builder.append('-');
+        }
+        // Widen so that negating Integer.MIN_VALUE is exact.
+        long magnitude = Math.abs((long) valueTimes10);
+        builder.append(magnitude / 10).append('.').append((char) ('0' + magnitude % 10));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Write a fixed point number with one decimal place into the end of the
+     * specified array, right-aligned.
+     *
+     * @param chars the destination, at least MAX_FIXED1_LENGTH long.
+     * @param valueTimes10 the number times 10.
+     * @return the index of the first character written.
+     */
+    static int writeFixed1(char[] chars, int valueTimes10) {
+        long magnitude = Math.abs((long) valueTimes10);
+        int pos = chars.length;
+        chars[--pos] = (char) ('0' + magnitude % 10);
+        chars[--pos] = '.';
+        magnitude /= 10;
+        do {
+            chars[--pos] = (char) ('0' + magnitude % 10);
+            magnitude /= 10;
+        } while (magnitude != 0);
+        if (valueTimes10 < 0) {
+            chars[--pos] = '-';
+        }
+        return pos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the specified text padded with leading spaces to the specified
+     * minimum length.
+     *
+     * @param text the text.
+     * @param minLength the minimum length.
+     * @return the padded text.
+     */
+    static String padLeft(String text, int minLength) {
+        if (text.length() >= minLength) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(minLength);
+        for (int i = text.length(); i < minLength; ++i) {
+            builder.append(' ');
+        }
+        return builder.append(text).toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a table of the formatted numbers from 0 to size - 1.
+     *
+     * @param size the number of entries.
+     * @param width the minimum width of each entry.
+     * @param pad the padding character.
+     * @return the table.
+     */
+    private static String[] buildTable(int size, int width, char pad) {
+        String[] table = new String[size];
+        for (int i = 0; i < size; ++i) {
+            StringBuilder builder = new StringBuilder(width);
+            String digits = Integer.toString(i);
+            for (int j = digits.length(); j < width; ++j) {
+                builder.append(pad);
+            }
+            table[i] = builder.append(digits).toString();
+        }
+        return table;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the table of compass headings from 0.0 to 359.9 degrees.
+     *
+     * @return the table.
+     */
+    private static String[] buildHeadingTable() {
+        String[] table = new String[3600];
+        for (int i = 0; i < table.length; ++i) {
+            table[i] = padLeft(fixed1(i), 5);
+        }
+        return table;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The maximum length of a number formatted by fixed1(): a sign, the 9
+     * digits of Integer.MAX_VALUE / 10, a point and a decimal digit.
+     */
+    static final int MAX_FIXED1_LENGTH = 12;
+
+    /**
+     * Numbers from 0 to 99, padded to two characters with a leading space.
+     * Covers light levels and hours.
+     */
+    private static final String[] SPACE_PAD_2 = buildTable(100, 2, ' ');
+
+    /**
+     * Numbers from 0 to 99, padded to two characters with a leading zero.
+     * Covers minutes, seconds and hours.
+     */
+    private static final String[] ZERO_PAD_2 = buildTable(100, 2, '0');
+
+    /**
+     * Numbers from 0 to 359, padded to three characters with leading spaces.
+     * Covers compass headings in whole degrees.
+     */
+    private static final String[] SPACE_PAD_3 = buildTable(360, 3, ' ');
+
+    /**
+     * Compass headings from 0.0 to 359.9, padded to five characters with
+     * leading spaces, indexed by tenths of a degree.
+     */
+    private static final String[] HEADING_1 = buildHeadingTable();
+} // class NumberText
@@ -0,0 +1,69 @@
+package nu.nerd.nerdpoints.format;
+
+import java.util.function.Supplier;
+
+// ----------------------------------------------------------------------------
+/**
+ * Base of the primitive counterparts of {@link TextSupplier}.
+ *
+ * Subclasses fetch the value and compare it as a primitive, so that checking
+ * whether the text has changed does not box the value. The text is only
+ * reformatted when the value changes.
+ */
+abstract class PrimitiveTextSupplier implements Supplier<String>, TextAppender {
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.function.Supplier#get()
+     */
+    @Override
+    public String get() {
+        if (fetch() || _text == null) {
+            _text = format();
+        }
+        return _text;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.TextAppender#appendTo(java.lang.StringBuilder)
+     */
+    @Override
+    public void appendTo(StringBuilder builder) {
+        if (!appendValue(builder)) {
+            builder.append(get());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Fetch the current value and remember it as the value to format.
+     *
+     * @return true if the value differs from the previously fetched one.
+     */
+    protected abstract boolean fetch();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Format the most recently fetched value.
+     *
+     * @return the text.
+     */
+    protected abstract String format();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append the text of the current value to a StringBuilder without creating
+     * a String, if it is formatted in a way that allows that.
+     *
+     * @param builder the destination.
+     * @return true if the text was appended; false if it must be formatted.
+     */
+    protected abstract boolean appendValue(StringBuilder builder);
+
+    // ------------------------------------------------------------------------
+    /**
+     * The cached result of formatting the most recently fetched value, or null
+     * if it should be formatted.
+     */
+    protected String _text;
+} // class PrimitiveTextSupplier
@@ -1,70 +1,180 @@
 package nu.nerd.nerdpoints.format;
 
-import java.util.HashMap;
 import java.util.function.Supplier;
 
 // ----------------------------------------------------------------------------
 /**
  * Records the mapping from names to displayed values which are, in effect,
  * variables.
- * 
- * Displayed values are instances of Supplier<String> that are evaluated as
- * needed, so if a value is never referenced, the evaluation never occurs,
- * saving some CPU cycles.
+ *
+ * Displayed values are either fixed text or instances of Supplier<String> that
+ * are evaluated as needed, so if a value is never referenced, the evaluation
+ * never occurs, saving some CPU cycles.
+ *
+ * The set of names that can be defined is fixed by the Scope's
+ * {@link ScopeSchema}. Values are stored in arrays indexed by slot, so that a
+ * {@link CompiledFormat} can look them up without hashing names.
  */
 public class Scope {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param schema the schema defining the variables of this Scope.
+     */
+    public Scope(ScopeSchema schema) {
+        _schema = schema;
+        _suppliers = new Supplier<?>[schema.size()];
+        _texts = new String[schema.size()];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the schema defining the variables of this Scope.
+     *
+     * @return the schema defining the variables of this Scope.
+     */
+    public ScopeSchema getSchema() {
+        return _schema;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Set the value associated with the name to the result of calling the
      * supplier.
-     * 
+     *
      * @param name the key identifying the value in this Scope.
      * @param supplier supplies the String form of the value.
+     * @throws IllegalArgumentException if the name is not in the schema.
      */
     public void set(String name, Supplier<String> supplier) {
-        _values.put(name, supplier);
+        set(getSlot(name), supplier);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Return the supplier associated with the specified name.
-     * 
-     * @param name the key.
-     * @return the Supplier<String> that formats the value.
+     * Set the value in the specified slot to the result of calling the
+     * supplier.
+     *
+     * @param slot the slot index of the variable in the schema.
+     * @param supplier supplies the String form of the value.
      */
-    public Supplier<String> get(String name) {
-        return _values.get(name);
+    public void set(int slot, Supplier<String> supplier) {
+        _suppliers[slot] = supplier;
+        _texts[slot] = null;
     }
 
     // ------------------------------------------------------------------------
     /**
      * Map the specified name to fixed text.
-     * 
+     *
      * @param name the key.
      * @param value the constant String value.
+     * @throws IllegalArgumentException if the name is not in the schema.
      */
     public void setText(String name, String value) {
-        set(name, () -> value);
+        setText(getSlot(name), value);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Map the variable in the specified slot to fixed text.
+     *
+     * @param slot the slot index of the variable in the schema.
+     * @param value the constant String value.
+     */
+    public void setText(int slot, String value) {
+        _suppliers[slot] = null;
+        _texts[slot] = value;
     }
 
     // ------------------------------------------------------------------------
     /**
      * Return the value associated with name, or "%name%", if name has no
      * definition in this scope.
-     * 
+     *
      * @return name the key.
      * @return the value associated with name, or "%name%", if name has no
      *         definition in this scope.
      */
     public String getText(String name) {
-        Supplier<String> text = _values.get(name);
-        return (text != null) ? text.get() : '%' + name + '%';
+        int slot = _schema.getSlot(name);
+        return (slot >= 0) ? getText(slot) : '%' + name + '%';
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value in the specified slot, or "%name%" if the slot has no
+     * value.
+     *
+     * @param slot the slot index of the variable in the schema.
+     * @return the value in the specified slot.
+     */
+    public String getText(int slot) {
+        Supplier<?> supplier = _suppliers[slot];
+        if (supplier != null) {
+            return (String) supplier.get();
+        }
+        String text = _texts[slot];
+        return (text != null) ? text : '%' + _schema.getName(slot) + '%';
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append the value in the specified slot to a StringBuilder, or "%name%"
+     * if the slot has no value.
+     *
+     * Values that implement {@link TextAppender} are appended in place,
+     * without producing an intermediate String.
+     *
+     * @param slot the slot index of the variable in the schema.
+     * @param builder the destination.
+     */
+    public void appendText(int slot, StringBuilder builder) {
+        Supplier<?> supplier = _suppliers[slot];
+        if (supplier instanceof TextAppender) {
+            ((TextAppender) supplier).appendTo(builder);
+        } else if (supplier != null) {
+            builder.append((String) supplier.get());
+        } else {
+            String text = _texts[slot];
+            if (text != null) {
+                builder.append(text);
+            } else {
+                builder.append('%').append(_schema.getName(slot)).append('%');
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the slot index of the specified variable.
+     *
+     * @param name the variable name.
+     * @return the slot index.
+     * @throws IllegalArgumentException if the name is not in the schema.
+     */
+    protected int getSlot(String name) {
+        int slot = _schema.getSlot(name);
+        if (slot < 0) {
+            throw new IllegalArgumentException("unknown variable: " + name);
+        }
+        return slot;
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Mapping from names to Supplier<String>s that format the corresponding
-     * values.
+     * The schema defining the variables of this Scope.
+     */
+    protected final ScopeSchema _schema;
+
+    /**
+     * Supplier<String>s that format the corresponding values, indexed by slot.
+     */
+    protected final Supplier<?>[] _suppliers;
+
+    /**
+     * Fixed text values, indexed by slot.
      */
-    protected HashMap<String, Supplier<String>> _values = new HashMap<>();
-} // class Scope
\ No newline at end of file
+    protected final String[] _texts;
+} // class Scope
@@ -0,0 +1,75 @@
+package nu.nerd.nerdpoints.format;
+
+import java.util.HashMap;
+
+// ----------------------------------------------------------------------------
+/**
+ * The fixed set of variable names that can be defined in a {@link Scope}, each
+ * assigned an integer slot.
+ *
+ * {@link Format}s are compiled against a ScopeSchema so that variable
+ * references are resolved to slots once, rather than looked up by name every
+ * time the Format is expanded. All Scopes that share a ScopeSchema can be used
+ * with the same {@link CompiledFormat}.
+ */
+public class ScopeSchema {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param names the names of the variables in the schema, in slot order.
+     * @throws IllegalArgumentException if a name is repeated.
+     */
+    public ScopeSchema(String... names) {
+        _names = names.clone();
+        for (int i = 0; i < _names.length; ++i) {
+            if (_slots.put(_names[i], i) != null) {
+                throw new IllegalArgumentException("duplicate variable name: " + _names[i]);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of slots in this schema.
+     *
+     * @return the number of slots in this schema.
+     */
+    public int size() {
+        return _names.length;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the slot index of the variable with the specified name.
+     *
+     * @param name the variable name.
+     * @return the slot index, or -1 if the variable is not in this schema.
+     */
+    public int getSlot(String name) {
+        Integer slot = _slots.get(name);
+        return (slot != null) ? slot : -1;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the name of the variable in the specified slot.
+     *
+     * @param slot the slot index.
+     * @return the variable name.
+     */
+    public String getName(int slot) {
+        return _names[slot];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Variable names, indexed by slot.
+     */
+    protected final String[] _names;
+
+    /**
+     * Map from variable name to slot index.
+     */
+    protected final HashMap<String, Integer> _slots = new HashMap<>();
+} // class ScopeSchema
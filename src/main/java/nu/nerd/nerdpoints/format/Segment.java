@@ -13,4 +13,13 @@ public interface Segment {
      * @return the formatted text representation of this segment.
      */
     public String getText(Scope scope);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append the instructions that render this segment to a program being
+     * compiled.
+     * 
+     * @param program the program being compiled.
+     */
+    public void compile(CompiledFormat program);
 }
\ No newline at end of file
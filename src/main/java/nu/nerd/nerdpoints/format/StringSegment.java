@@ -24,6 +24,15 @@ public class StringSegment implements Segment {
         return _text;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.Segment#compile(CompiledFormat)
+     */
+    @Override
+    public void compile(CompiledFormat program) {
+        program.appendLiteral(_text);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * The formatted text representation of this segment.
@@ -0,0 +1,19 @@
+package nu.nerd.nerdpoints.format;
+
+// ----------------------------------------------------------------------------
+/**
+ * A variable value that can append its text directly to a StringBuilder,
+ * without first producing a String.
+ *
+ * When a {@link Scope} value implements this interface, {@link CompiledFormat}
+ * expansion appends the value in place rather than calling its Supplier.
+ */
+public interface TextAppender {
+    // ------------------------------------------------------------------------
+    /**
+     * Append the current text of this value to the specified StringBuilder.
+     *
+     * @param builder the destination.
+     */
+    public void appendTo(StringBuilder builder);
+} // interface TextAppender
@@ -28,6 +28,15 @@ public class VariableSegment implements Segment {
         return scope.getText(_variableName);
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.nerdpoints.format.Segment#compile(CompiledFormat)
+     */
+    @Override
+    public void compile(CompiledFormat program) {
+        program.appendVariable(_variableName);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * The variable's name.
@@ -0,0 +1,138 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import nu.nerd.nerdpoints.ComponentCache;
+import nu.nerd.nerdpoints.HudGovernor;
+import nu.nerd.nerdpoints.HudScheduler;
+import nu.nerd.nerdpoints.NerdPoints;
+import nu.nerd.nerdpoints.RenderPool;
+import nu.nerd.nerdpoints.SectionMemo;
+
+// ----------------------------------------------------------------------------
+/**
+ * The NerdPoints plugin, initialised outside of a server.
+ *
+ * Only the configuration and HUD update machinery are set up; commands, event
+ * handlers and scheduled tasks are not registered. Callers simulate events
+ * and run the HUD update task themselves.
+ */
+public class BenchPlugin extends NerdPoints {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the plugin, creating and initialising it on first use.
+     *
+     * The configuration is the default config.yml.
+     *
+     * @return the plugin.
+     */
+    @SuppressWarnings("deprecation")
+    public static synchronized BenchPlugin get() {
+        if (_instance == null) {
+            SimServer server = SimServer.get();
+            try {
+                File dataFolder = Files.createTempDirectory("NerdPoints").toFile();
+                _instance = new BenchPlugin(new JavaPluginLoader(server.getServer()),
+                                            new PluginDescriptionFile("NerdPoints", "bench", NerdPoints.class.getName()),
+                                            dataFolder, new File(dataFolder, "NerdPoints.jar"));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            _instance.start();
+        }
+        return _instance;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @see NerdPoints#NerdPoints(JavaPluginLoader, PluginDescriptionFile, File,
+     *      File)
+     */
+    protected BenchPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Load the default configuration and create the HUD update machinery.
+     */
+    protected void start() {
+        PLUGIN = this;
+        saveDefaultConfig();
+        CONFIG.reload(false);
+        // Simulated ticks run back to back, so their intervals say nothing
+        // about server load; measure the HUD at full fidelity.
+        CONFIG.HUD_GOVERNOR_ENABLED = false;
+        _actionBarPool = RenderPool.create(CONFIG.HUD_UPDATE_EXECUTOR, CONFIG.HUD_UPDATE_THREADS);
+        _componentCache = new ComponentCache(CONFIG.HUD_UPDATE_COMPONENT_CACHE_SIZE);
+        _sectionMemo = new SectionMemo(CONFIG.HUD_UPDATE_SECTION_MEMO_SIZE);
+        _hudScheduler = new HudScheduler(this, CONFIG.HUD_UPDATE_TICKS);
+        _hudGovernor = new HudGovernor();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Handle a player joining, as the server would.
+     *
+     * @param player the player.
+     */
+    public void join(Player player) {
+        onPlayerJoin(new PlayerJoinEvent(player, null));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Handle a player quitting, as the server would.
+     *
+     * @param player the player.
+     */
+    public void quit(Player player) {
+        onPlayerQuit(new PlayerQuitEvent(player, null));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Run the HUD update task for one tick, as the server scheduler would.
+     */
+    public void runHUDUpdate() {
+        _hudScheduler.run();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Wait until all asynchronous HUD work has finished.
+     *
+     * @param timeoutMillis the maximum time to wait.
+     * @return true if all work finished within the timeout.
+     */
+    public boolean awaitHUDWork(long timeoutMillis) {
+        return _actionBarPool.awaitIdle(timeoutMillis);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if there is no asynchronous HUD work in progress.
+     *
+     * @return true if there is no asynchronous HUD work in progress.
+     */
+    public boolean isHUDWorkDone() {
+        return _actionBarPool.isIdle();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The single instance of this class.
+     */
+    private static BenchPlugin _instance;
+} // class BenchPlugin
@@ -0,0 +1,205 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import nu.nerd.nerdpoints.NerdPoints;
+import nu.nerd.nerdpoints.PlayerState;
+import nu.nerd.nerdpoints.format.Format;
+
+// ----------------------------------------------------------------------------
+/**
+ * Regression check of the memory allocated by steady-state HUD frames with
+ * hud.update.zero-allocation enabled.
+ *
+ * A player with every HUD section visible shuffles back and forth by a
+ * hundredth of a block, with coordinates shown to one decimal place. Every
+ * frame is therefore handed off to be rendered, and re-renders the coords
+ * section and the HUD text, but the text itself never changes, so nothing
+ * needs to be sent. Only the render, normally done off the main thread, is
+ * measured; the main thread preparation calls the stand-in Bukkit objects,
+ * which are dynamic proxies that allocate on every call.
+ *
+ * Allocation is measured on the current thread with the HotSpot
+ * ThreadMXBean, so frames are rendered inline rather than in the thread
+ * pool. Bytes per frame are reported with zero allocation mode off and on,
+ * and the check fails if the figure with it on exceeds the budget.
+ *
+ * The check runs in the plugin's build as {@link HudAllocationTest}. It can
+ * also be run directly from the benchmarks jar.
+ *
+ * Usage: java -cp benchmarks.jar nu.nerd.nerdpoints.bench.HudAllocationCheck
+ * [budget bytes per frame]
+ */
+public class HudAllocationCheck {
+    // ------------------------------------------------------------------------
+    /**
+     * Run the check.
+     *
+     * @param args the optional budget in bytes per frame.
+     * @throws IllegalStateException if the budget is exceeded.
+     */
+    public static void main(String[] args) {
+        check((args.length > 0) ? Double.parseDouble(args[0]) : DEFAULT_BUDGET);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Measure bytes per frame with zero allocation mode off and on, report
+     * them, and check the latter against the budget.
+     *
+     * @param budget the budget in bytes per frame.
+     * @throws IllegalStateException if the budget is exceeded.
+     */
+    public static void check(double budget) {
+        HudAllocationCheck check = new HudAllocationCheck();
+        double legacy = check.run(false);
+        double zero = check.run(true);
+        System.out.println(String.format("Bytes per steady-state HUD frame: %.1f (zero-allocation off), " +
+                                         "%.1f (zero-allocation on), budget %.1f",
+                                         legacy, zero, budget));
+        if (zero > budget) {
+            throw new IllegalStateException(String.format("HUD frames allocate %.1f bytes, exceeding the budget of %.1f",
+                                                          zero, budget));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     */
+    public HudAllocationCheck() {
+        BenchPlugin.get();
+        _world = SimServer.get().addWorld("allocation");
+        _player = new SimPlayer("allocation", _world, 100, -200, 40);
+        _state = new PlayerState(_player.getPlayer());
+        _state.hudVisible.set(true);
+        _state.biomeVisible.set(true);
+        _state.chunkVisible.set(true);
+        _state.compassVisible.set(true);
+        _state.coordsVisible.set(true);
+        _state.lightVisible.set(true);
+        _state.timeVisible.set(true);
+        _state.coordsFormat.set(Format.intern("&7X &f%x.% &7Y &f%y.% &7Z &f%z.%"));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Warm up, then measure the mean bytes allocated per rendered frame.
+     *
+     * @param zeroAllocation the value of hud.update.zero-allocation.
+     * @return the mean bytes allocated per frame.
+     * @throws IllegalStateException if no frames were rendered.
+     */
+    public double run(boolean zeroAllocation) {
+        NerdPoints.CONFIG.HUD_UPDATE_ZERO_ALLOCATION = zeroAllocation;
+        frames(WARMUP_FRAMES);
+        long overhead = getOverhead();
+
+        long bytes = 0;
+        int rendered = 0;
+        for (int i = 0; i < MEASURED_FRAMES; ++i) {
+            if (prepare(i)) {
+                long before = _threads.getThreadAllocatedBytes(_threadId);
+                _state.asyncUpdateHUD();
+                bytes += _threads.getThreadAllocatedBytes(_threadId) - before - overhead;
+                ++rendered;
+            }
+        }
+        if (rendered == 0) {
+            throw new IllegalStateException("no HUD frames were rendered");
+        }
+        return Math.max(0, bytes) / (double) rendered;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Prepare and render frames without measuring them.
+     *
+     * @param count the number of frames.
+     */
+    protected void frames(int count) {
+        for (int i = 0; i < count; ++i) {
+            if (prepare(i)) {
+                _state.asyncUpdateHUD();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Move the player and capture a snapshot of their HUD inputs, as the main
+     * thread would.
+     *
+     * @param frame the frame number; the direction of movement alternates.
+     * @return true if a snapshot was handed off for rendering.
+     */
+    protected boolean prepare(int frame) {
+        _player.step((frame & 1) == 0 ? STEP : -STEP);
+        return _state.syncPrepareHUDUpdate();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the bytes allocated by one pair of calls to measure allocation,
+     * which are subtracted from each measurement.
+     *
+     * @return the bytes allocated by measurement itself.
+     */
+    protected long getOverhead() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; ++i) {
+            long before = _threads.getThreadAllocatedBytes(_threadId);
+            min = Math.min(min, _threads.getThreadAllocatedBytes(_threadId) - before);
+        }
+        return min;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The default budget in bytes per frame: measurement noise only.
+     */
+    static final double DEFAULT_BUDGET = 32;
+
+    /**
+     * Frames rendered before measurement starts, long enough for the JIT
+     * compiler to optimise the render path.
+     */
+    private static final int WARMUP_FRAMES = 50000;
+
+    /**
+     * Frames measured.
+     */
+    private static final int MEASURED_FRAMES = 20000;
+
+    /**
+     * Distance in blocks the player moves in each frame.
+     */
+    private static final double STEP = 0.01;
+
+    /**
+     * The HotSpot ThreadMXBean, which reports allocation per thread.
+     */
+    protected final ThreadMXBean _threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The ID of the thread running the check.
+     */
+    protected final long _threadId = Thread.currentThread().getId();
+
+    /**
+     * The world.
+     */
+    protected final SimWorld _world;
+
+    /**
+     * The player.
+     */
+    protected final SimPlayer _player;
+
+    /**
+     * The player's HUD state.
+     */
+    protected final PlayerState _state;
+} // class HudAllocationCheck
@@ -0,0 +1,25 @@
+package nu.nerd.nerdpoints.bench;
+
+import org.junit.Test;
+
+// ----------------------------------------------------------------------------
+/**
+ * Runs {@link HudAllocationCheck} as part of the build, so that a regression
+ * in the memory allocated by steady-state HUD frames fails it.
+ *
+ * The budget in bytes per frame is the hud.allocation.budget system property,
+ * set from the Maven property of the same name.
+ */
+public class HudAllocationTest {
+    // ------------------------------------------------------------------------
+    /**
+     * Check that steady-state HUD frames allocate no more than the budget
+     * with hud.update.zero-allocation enabled.
+     */
+    @Test
+    public void steadyStateFramesStayWithinBudget() {
+        String budget = System.getProperty("hud.allocation.budget");
+        HudAllocationCheck.check((budget != null) ? Double.parseDouble(budget)
+                                                  : HudAllocationCheck.DEFAULT_BUDGET);
+    }
+} // class HudAllocationTest
@@ -0,0 +1,271 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import nu.nerd.nerdpoints.NerdPoints;
+import nu.nerd.nerdpoints.PlayerState;
+
+// ----------------------------------------------------------------------------
+/**
+ * Headless load simulator for the HUD update task.
+ *
+ * Simulates N players with visible HUDs, a fraction of them walking circular
+ * paths and the rest idle, and drives the plugin's HUD update task as the
+ * server scheduler would. Server ticks are simulated back to back rather than
+ * at 20 per second, so the figures are the cost of the HUD alone.
+ *
+ * For each combination of player count, update mode (parallel, sequential or
+ * auto) and hud.update.ticks, the simulator reports:
+ * <ul>
+ * <li>main thread time per tick: mean, 99th percentile and maximum,</li>
+ * <li>async time: the mean time from the end of the main thread work until
+ * all asynchronous HUD work has finished,</li>
+ * <li>timeouts: ticks that returned to the server with asynchronous work still
+ * in progress,</li>
+ * <li>sends per second of simulated server time.</li>
+ * </ul>
+ *
+ * Usage: java -cp benchmarks.jar nu.nerd.nerdpoints.bench.HudLoadSimulator
+ * [player counts...]
+ */
+public class HudLoadSimulator {
+    // ------------------------------------------------------------------------
+    /**
+     * Run the simulations.
+     *
+     * @param args player counts to simulate; defaults to 100 - 5000.
+     */
+    public static void main(String[] args) {
+        int[] playerCounts = (args.length > 0)
+            ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+            : DEFAULT_PLAYER_COUNTS;
+
+        HudLoadSimulator simulator = new HudLoadSimulator();
+        System.out.println(String.format("%7s %10s %5s %9s %9s %9s %9s %8s %9s",
+                                         "players", "mode", "ticks",
+                                         "main ms", "p99 ms", "max ms",
+                                         "async ms", "timeouts", "sends/s"));
+        for (int players : playerCounts) {
+            for (String mode : MODES) {
+                for (int updateTicks : UPDATE_TICKS) {
+                    System.out.println(simulator.run(players, mode, updateTicks));
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     */
+    public HudLoadSimulator() {
+        _plugin = BenchPlugin.get();
+        _world = SimServer.get().addWorld("world");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Run one simulation.
+     *
+     * @param playerCount the number of online players.
+     * @param mode the update mode: "parallel", "sequential" or "auto".
+     * @param updateTicks the value of hud.update.ticks.
+     * @return a formatted line of results.
+     */
+    public String run(int playerCount, String mode, int updateTicks) {
+        NerdPoints.CONFIG.HUD_UPDATE_PARALLEL = !mode.equals("sequential");
+        NerdPoints.CONFIG.HUD_UPDATE_ADAPTIVE = mode.equals("auto");
+        NerdPoints.CONFIG.HUD_UPDATE_TICKS = updateTicks;
+        _plugin.getHudScheduler().setPeriod(updateTicks);
+        setPlayers(playerCount);
+
+        simulate(WARMUP_TICKS, null);
+
+        long sendsBefore = getTotalSends();
+        Results results = new Results();
+        simulate(MEASURED_TICKS, results);
+        long sends = getTotalSends() - sendsBefore;
+
+        long[] main = results.mainNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        double meanMain = Arrays.stream(main).average().orElse(0);
+        double p99Main = main.length > 0 ? main[(int) Math.min(main.length - 1, Math.ceil(0.99 * main.length) - 1)] : 0;
+        double maxMain = main.length > 0 ? main[main.length - 1] : 0;
+        double meanAsync = results.asyncNanos.stream().mapToLong(Long::longValue).average().orElse(0);
+        double seconds = MEASURED_TICKS / 20.0;
+        return String.format("%7d %10s %5d %9.3f %9.3f %9.3f %9.3f %8d %9.0f",
+                             playerCount, mode, updateTicks,
+                             meanMain / 1e6, p99Main / 1e6, maxMain / 1e6, meanAsync / 1e6,
+                             results.timeouts, sends / seconds);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Simulate server ticks, running the HUD update task on every tick.
+     *
+     * @param ticks the number of server ticks to simulate.
+     * @param results the destination of measurements, or null to discard them.
+     */
+    protected void simulate(int ticks, Results results) {
+        for (int tick = 0; tick < ticks; ++tick) {
+            _world.tick(1);
+            for (int i = 0; i < _players.size(); ++i) {
+                _players.get(i).step(_speeds[i]);
+            }
+
+            long start = System.nanoTime();
+            _plugin.runHUDUpdate();
+            long mainEnd = System.nanoTime();
+            boolean timedOut = !_plugin.isHUDWorkDone();
+            _plugin.awaitHUDWork(ASYNC_WAIT_MILLIS);
+            long asyncEnd = System.nanoTime();
+
+            if (results != null) {
+                results.mainNanos.add(mainEnd - start);
+                results.asyncNanos.add(asyncEnd - mainEnd);
+                if (timedOut) {
+                    ++results.timeouts;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Log in or out players so that the specified number are online, all with
+     * every HUD section visible.
+     *
+     * @param playerCount the number of players.
+     */
+    protected void setPlayers(int playerCount) {
+        while (_players.size() > playerCount) {
+            SimPlayer player = _players.remove(_players.size() - 1);
+            SimServer.get().getOnlinePlayers().remove(player.getPlayer());
+            _plugin.quit(player.getPlayer());
+        }
+
+        while (_players.size() < playerCount) {
+            int index = _players.size();
+            SimPlayer player = new SimPlayer("Player" + index, _world,
+                                             _random.nextInt(4000) - 2000, _random.nextInt(4000) - 2000,
+                                             8 + _random.nextInt(64));
+            _players.add(player);
+            SimServer.get().addOnlinePlayer(player.getPlayer());
+            _plugin.join(player.getPlayer());
+
+            PlayerState state = _plugin.getState(player.getPlayer());
+            state.hudVisible.set(true);
+            state.biomeVisible.set(true);
+            state.chunkVisible.set(true);
+            state.compassVisible.set(true);
+            state.coordsVisible.set(true);
+            state.lightVisible.set(true);
+            state.timeVisible.set(true);
+        }
+
+        _speeds = new double[playerCount];
+        for (int i = 0; i < playerCount; ++i) {
+            // Walking speed is about 0.2 blocks per tick.
+            _speeds[i] = (_random.nextDouble() < MOVING_FRACTION) ? 0.2 : 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total number of action bar messages sent to online players.
+     *
+     * @return the total number of action bar messages sent to online players.
+     */
+    protected long getTotalSends() {
+        long total = 0;
+        for (SimPlayer player : _players) {
+            total += player.getSends();
+        }
+        return total;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Measurements of one simulation.
+     */
+    protected static class Results {
+        /**
+         * Main thread time of the HUD update task in each tick.
+         */
+        List<Long> mainNanos = new ArrayList<>();
+
+        /**
+         * Time after each tick until asynchronous work finished.
+         */
+        List<Long> asyncNanos = new ArrayList<>();
+
+        /**
+         * Number of ticks that returned with work still in progress.
+         */
+        int timeouts;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Player counts simulated by default.
+     */
+    private static final int[] DEFAULT_PLAYER_COUNTS = { 100, 250, 500, 1000, 2500, 5000 };
+
+    /**
+     * Update modes simulated.
+     */
+    private static final String[] MODES = { "parallel", "sequential", "auto" };
+
+    /**
+     * Values of hud.update.ticks simulated.
+     */
+    private static final int[] UPDATE_TICKS = { 1, 2, 4 };
+
+    /**
+     * Simulated ticks before measurement starts.
+     */
+    private static final int WARMUP_TICKS = 400;
+
+    /**
+     * Simulated ticks measured.
+     */
+    private static final int MEASURED_TICKS = 400;
+
+    /**
+     * Fraction of players who are moving rather than idle.
+     */
+    private static final double MOVING_FRACTION = 0.4;
+
+    /**
+     * Maximum time to wait for asynchronous work after each tick.
+     */
+    private static final long ASYNC_WAIT_MILLIS = 10000;
+
+    /**
+     * The plugin.
+     */
+    protected final BenchPlugin _plugin;
+
+    /**
+     * The world all players are in.
+     */
+    protected final SimWorld _world;
+
+    /**
+     * Online players.
+     */
+    protected final List<SimPlayer> _players = new ArrayList<>();
+
+    /**
+     * Distance each player walks per tick, indexed like _players.
+     */
+    protected double[] _speeds = new double[0];
+
+    /**
+     * Source of player positions and movement; seeded for repeatability.
+     */
+    protected final Random _random = new Random(1);
+} // class HudLoadSimulator
@@ -0,0 +1,174 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.BaseComponent;
+
+// ----------------------------------------------------------------------------
+/**
+ * A stand-in Player that walks in a circle and counts the action bar messages
+ * sent to it.
+ */
+public class SimPlayer {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param name the player name.
+     * @param world the world the player is in.
+     * @param centreX the X coordinate of the centre of the player's path.
+     * @param centreZ the Z coordinate of the centre of the player's path.
+     * @param radius the radius of the player's circular path.
+     */
+    public SimPlayer(String name, SimWorld world, double centreX, double centreZ, double radius) {
+        _name = name;
+        _world = world;
+        _centreX = centreX;
+        _centreZ = centreZ;
+        _radius = radius;
+        _y = 70;
+        step(0);
+
+        Player.Spigot spigot = new Player.Spigot() {
+            @Override
+            public void sendMessage(ChatMessageType position, BaseComponent... components) {
+                _sends.incrementAndGet();
+                _lastComponents = components;
+            }
+        };
+
+        _player = StandIns.proxy(Player.class, (method, args) -> {
+            switch (method) {
+            case "getName":
+            case "getDisplayName":
+                return _name;
+            case "getUniqueId":
+                return _uuid;
+            case "getWorld":
+                return _world.getWorld();
+            case "getLocation":
+                if (args.length == 1) {
+                    Location loc = (Location) args[0];
+                    if (loc != null) {
+                        loc.setWorld(_world.getWorld());
+                        loc.setX(_x);
+                        loc.setY(_y);
+                        loc.setZ(_z);
+                        loc.setYaw(_yaw);
+                        loc.setPitch(0);
+                    }
+                    return loc;
+                }
+                return new Location(_world.getWorld(), _x, _y, _z, _yaw, 0);
+            case "spigot":
+                return spigot;
+            case "isOnline":
+            case "isValid":
+                return true;
+            default:
+                return StandIns.UNHANDLED;
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the stand-in Player.
+     *
+     * @return the stand-in Player.
+     */
+    public Player getPlayer() {
+        return _player;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Move the player along their path and turn to face the direction of
+     * travel.
+     *
+     * @param distance the distance to walk in blocks; zero to stand still.
+     */
+    public void step(double distance) {
+        _angle += distance / _radius;
+        _x = _centreX + _radius * Math.cos(_angle);
+        _z = _centreZ + _radius * Math.sin(_angle);
+        // Minecraft yaw: 0 = south (+Z), 90 = west (-X).
+        _yaw = (float) Math.toDegrees(_angle) % 360;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of action bar messages sent to this player.
+     *
+     * @return the number of action bar messages sent to this player.
+     */
+    public long getSends() {
+        return _sends.get();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most recently sent components.
+     *
+     * @return the most recently sent components.
+     */
+    public BaseComponent[] getLastComponents() {
+        return _lastComponents;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The player name.
+     */
+    protected final String _name;
+
+    /**
+     * The player UUID.
+     */
+    protected final UUID _uuid = UUID.randomUUID();
+
+    /**
+     * The world the player is in.
+     */
+    protected final SimWorld _world;
+
+    /**
+     * The stand-in Player.
+     */
+    protected final Player _player;
+
+    /**
+     * The centre and radius of the player's path.
+     */
+    protected final double _centreX, _centreZ, _radius;
+
+    /**
+     * The angle (radians) of the player's position around the centre.
+     */
+    protected double _angle;
+
+    /**
+     * The player's coordinates.
+     */
+    protected volatile double _x, _y, _z;
+
+    /**
+     * The player's yaw.
+     */
+    protected volatile float _yaw;
+
+    /**
+     * The number of action bar messages sent to this player.
+     */
+    protected final AtomicLong _sends = new AtomicLong();
+
+    /**
+     * The most recently sent components.
+     */
+    protected volatile BaseComponent[] _lastComponents;
+} // class SimPlayer
@@ -0,0 +1,151 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+// ----------------------------------------------------------------------------
+/**
+ * A stand-in Server, installed as the Bukkit singleton.
+ *
+ * The scheduler and plugin manager accept and ignore everything; callers drive
+ * the plugin's periodic tasks directly.
+ */
+public class SimServer {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the SimServer, creating it and installing it as the Bukkit
+     * singleton on first use.
+     *
+     * @return the SimServer.
+     */
+    public static synchronized SimServer get() {
+        if (_instance == null) {
+            _instance = new SimServer();
+            Bukkit.setServer(_instance.getServer());
+        }
+        return _instance;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     */
+    protected SimServer() {
+        BukkitScheduler scheduler = StandIns.proxy(BukkitScheduler.class, (method, args) -> StandIns.UNHANDLED);
+        PluginManager pluginManager = StandIns.proxy(PluginManager.class, (method, args) -> StandIns.UNHANDLED);
+        _server = StandIns.proxy(Server.class, (method, args) -> {
+            switch (method) {
+            case "getLogger":
+                return _logger;
+            case "getName":
+                return "SimServer";
+            case "getVersion":
+            case "getBukkitVersion":
+                return "1.13.2-R0.1-SNAPSHOT";
+            case "getScheduler":
+                return scheduler;
+            case "getPluginManager":
+                return pluginManager;
+            case "getOnlinePlayers":
+                return _onlinePlayers;
+            case "getWorlds":
+                List<World> worlds = new ArrayList<>();
+                for (SimWorld world : _worlds) {
+                    worlds.add(world.getWorld());
+                }
+                return worlds;
+            case "isPrimaryThread":
+                return true;
+            default:
+                return StandIns.UNHANDLED;
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the stand-in Server.
+     *
+     * @return the stand-in Server.
+     */
+    public Server getServer() {
+        return _server;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Create a new world.
+     *
+     * @param name the world name.
+     * @return the world.
+     */
+    public SimWorld addWorld(String name) {
+        SimWorld world = new SimWorld(name);
+        _worlds.add(world);
+        return world;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add a player to the collection returned by Server.getOnlinePlayers().
+     *
+     * @param player the player.
+     */
+    public void addOnlinePlayer(Player player) {
+        _onlinePlayers.add(player);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Remove all online players.
+     */
+    public void clearOnlinePlayers() {
+        _onlinePlayers.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the online players.
+     *
+     * @return the online players.
+     */
+    public Collection<Player> getOnlinePlayers() {
+        return _onlinePlayers;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The single instance of this class.
+     */
+    private static SimServer _instance;
+
+    /**
+     * The stand-in Server.
+     */
+    protected final Server _server;
+
+    /**
+     * The server logger.
+     */
+    protected final Logger _logger = Logger.getLogger("SimServer");
+
+    /**
+     * The worlds.
+     */
+    protected final List<SimWorld> _worlds = new CopyOnWriteArrayList<>();
+
+    /**
+     * The online players.
+     */
+    protected final List<Player> _onlinePlayers = new CopyOnWriteArrayList<>();
+} // class SimServer
@@ -0,0 +1,201 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.util.UUID;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+
+// ----------------------------------------------------------------------------
+/**
+ * A stand-in World with a settable time, a biome pattern and synthetic light
+ * levels, readable through blocks or chunk snapshots.
+ */
+public class SimWorld {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param name the world name.
+     */
+    public SimWorld(String name) {
+        _name = name;
+        _world = StandIns.proxy(World.class, (method, args) -> {
+            switch (method) {
+            case "getName":
+                return _name;
+            case "getUID":
+                return _uuid;
+            case "getFullTime":
+                return _fullTime;
+            case "getTime":
+                return _fullTime % 24000;
+            case "getBiome":
+                return getBiome((Integer) args[0], (Integer) args[1]);
+            case "getBlockAt":
+                if (args.length == 1) {
+                    Location loc = (Location) args[0];
+                    return getBlock(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+                } else {
+                    return getBlock((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                }
+            case "getChunkAt":
+                if (args.length == 2) {
+                    return getChunk((Integer) args[0], (Integer) args[1]);
+                }
+                return StandIns.UNHANDLED;
+            case "getMaxHeight":
+                return 256;
+            case "hasStorm":
+            case "isThundering":
+                return false;
+            default:
+                return StandIns.UNHANDLED;
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the stand-in World.
+     *
+     * @return the stand-in World.
+     */
+    public World getWorld() {
+        return _world;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Advance the world's full time.
+     *
+     * @param ticks the number of ticks to advance.
+     */
+    public void tick(long ticks) {
+        _fullTime += ticks;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the biome at the specified block coordinates.
+     *
+     * Biomes form 64x64 block squares.
+     *
+     * @param x the X coordinate.
+     * @param z the Z coordinate.
+     * @return the biome.
+     */
+    public Biome getBiome(int x, int z) {
+        return BIOMES[((x >> 6) ^ (z >> 6)) & 3];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a stand-in Block at the specified coordinates.
+     *
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     * @param z the Z coordinate.
+     * @return the Block.
+     */
+    public Block getBlock(int x, int y, int z) {
+        return StandIns.proxy(Block.class, (method, args) -> {
+            switch (method) {
+            case "getX":
+                return x;
+            case "getY":
+                return y;
+            case "getZ":
+                return z;
+            case "getWorld":
+                return _world;
+            case "getBiome":
+                return getBiome(x, z);
+            case "getLightFromSky":
+                return (byte) ((y >= 64) ? 15 : 0);
+            case "getLightFromBlocks":
+                return (byte) ((x ^ z) & 15);
+            case "getLightLevel":
+                return (byte) Math.max((y >= 64) ? 15 : 0, (x ^ z) & 15);
+            default:
+                return StandIns.UNHANDLED;
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a stand-in Chunk at the specified chunk coordinates, whose
+     * snapshots report the same biomes and light levels as getBlock().
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the Chunk.
+     */
+    public Chunk getChunk(int chunkX, int chunkZ) {
+        ChunkSnapshot snapshot = StandIns.proxy(ChunkSnapshot.class, (method, args) -> {
+            switch (method) {
+            case "getX":
+                return chunkX;
+            case "getZ":
+                return chunkZ;
+            case "getWorldName":
+                return _name;
+            case "getBiome":
+                return getBiome((chunkX << 4) + (Integer) args[0], (chunkZ << 4) + (Integer) args[1]);
+            case "getBlockSkyLight":
+                return ((Integer) args[1] >= 64) ? 15 : 0;
+            case "getBlockEmittedLight":
+                return (((chunkX << 4) + (Integer) args[0]) ^ ((chunkZ << 4) + (Integer) args[2])) & 15;
+            default:
+                return StandIns.UNHANDLED;
+            }
+        });
+
+        return StandIns.proxy(Chunk.class, (method, args) -> {
+            switch (method) {
+            case "getX":
+                return chunkX;
+            case "getZ":
+                return chunkZ;
+            case "getWorld":
+                return _world;
+            case "isLoaded":
+                return true;
+            case "getChunkSnapshot":
+                return snapshot;
+            default:
+                return StandIns.UNHANDLED;
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Biomes used in the pattern returned by getBiome().
+     */
+    private static final Biome[] BIOMES = { Biome.PLAINS, Biome.FOREST, Biome.DESERT, Biome.RIVER };
+
+    /**
+     * The world name.
+     */
+    protected final String _name;
+
+    /**
+     * The world UUID.
+     */
+    protected final UUID _uuid = UUID.randomUUID();
+
+    /**
+     * The stand-in World.
+     */
+    protected final World _world;
+
+    /**
+     * The full time in ticks.
+     */
+    protected volatile long _fullTime = 1000;
+} // class SimWorld
@@ -0,0 +1,113 @@
+package nu.nerd.nerdpoints.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+// ----------------------------------------------------------------------------
+/**
+ * Helpers for implementing stand-in Bukkit interfaces as dynamic proxies.
+ *
+ * The Bukkit interfaces have hundreds of methods, of which the plugin calls
+ * only a handful. Stand-ins handle those by name and return zero, false or null
+ * from all others.
+ */
+public class StandIns {
+    // ------------------------------------------------------------------------
+    /**
+     * Handles the methods of a stand-in by name.
+     */
+    public interface Handler {
+        /**
+         * Handle a method call.
+         *
+         * @param name the method name.
+         * @param args the arguments (empty, never null).
+         * @return the result, or {@link StandIns#UNHANDLED} to return the
+         *         default value of the method's return type.
+         */
+        Object invoke(String name, Object[] args);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returned by a {@link Handler} to signify that the method is not
+     * implemented by the stand-in.
+     */
+    public static final Object UNHANDLED = new Object();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a stand-in implementation of the specified interface.
+     *
+     * Object methods use identity semantics.
+     *
+     * @param type the interface.
+     * @param handler handles the methods of the interface by name.
+     * @return the stand-in.
+     */
+    public static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                Object[] actualArgs = (args != null) ? args : NO_ARGS;
+                switch (method.getName()) {
+                case "equals":
+                    if (actualArgs.length == 1) {
+                        return proxy == actualArgs[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (actualArgs.length == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "toString":
+                    if (actualArgs.length == 0) {
+                        return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                    }
+                    break;
+                }
+
+                Object result = handler.invoke(method.getName(), actualArgs);
+                return (result != UNHANDLED) ? result : defaultValue(method.getReturnType());
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, invocationHandler));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the default value of the specified type: zero, false or null.
+     *
+     * @param type the type.
+     * @return the default value.
+     */
+    public static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else {
+            return 0.0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Substituted for a null argument array.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+} // class StandIns